@@ -0,0 +1,13 @@
+package com.gateway.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a Merchant controller parameter to be resolved from the X-Api-Key and
+// X-Api-Secret headers; requests with missing or wrong credentials get a 401
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AuthenticatedMerchant {
+}
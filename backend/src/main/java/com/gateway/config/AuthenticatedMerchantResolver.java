@@ -0,0 +1,46 @@
+package com.gateway.config;
+
+import com.gateway.models.Merchant;
+import com.gateway.services.ApiException;
+import com.gateway.services.MerchantAuthService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+// Authenticates the caller once per request and hands the merchant to the
+// handler. The result is kept as a request attribute so anything else that
+// needs the merchant during the same request reuses it instead of looking
+// the credentials up again.
+@Component
+public class AuthenticatedMerchantResolver implements HandlerMethodArgumentResolver {
+
+    public static final String MERCHANT_ATTRIBUTE = AuthenticatedMerchantResolver.class.getName() + ".merchant";
+
+    @Autowired
+    private MerchantAuthService merchantAuthService;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(AuthenticatedMerchant.class)
+            && Merchant.class.isAssignableFrom(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Object resolved = webRequest.getAttribute(MERCHANT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (resolved instanceof Merchant) {
+            return resolved;
+        }
+        Merchant merchant = merchantAuthService.authenticate(
+                webRequest.getHeader("X-Api-Key"), webRequest.getHeader("X-Api-Secret"))
+            .orElseThrow(ApiException::authentication);
+        webRequest.setAttribute(MERCHANT_ATTRIBUTE, merchant, RequestAttributes.SCOPE_REQUEST);
+        return merchant;
+    }
+}
@@ -17,6 +17,14 @@ public class RedisConfig {
     @Value("${REDIS_URL:redis://localhost:6379}")
     private String redisUrl;
 
+    // Every blocking queue consumer holds a connection while it waits, so the pool
+    // must be sized above the total worker thread count
+    @Value("${REDIS_CONNECTION_POOL_SIZE:128}")
+    private int connectionPoolSize;
+
+    @Value("${REDIS_CONNECTION_MIN_IDLE:24}")
+    private int connectionMinIdle;
+
     @Bean
     public LettuceConnectionFactory redisConnectionFactory() {
         String host = "localhost";
@@ -52,7 +60,9 @@ public class RedisConfig {
     public RedissonClient redissonClient() {
         Config config = new Config();
         config.useSingleServer()
-              .setAddress(redisUrl);
+              .setAddress(redisUrl)
+              .setConnectionPoolSize(connectionPoolSize)
+              .setConnectionMinimumIdleSize(connectionMinIdle);
         return Redisson.create(config);
     }
     
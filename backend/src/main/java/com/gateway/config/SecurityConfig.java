@@ -1,10 +1,23 @@
 package com.gateway.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
 
 @Configuration
-public class SecurityConfig {
-    // For this implementation, we're handling authentication at the controller/service level
-    // rather than using Spring Security filters, to keep it simple and match the requirements
-    // which specify checking X-Api-Key and X-Api-Secret headers in the business logic
-}
\ No newline at end of file
+public class SecurityConfig implements WebMvcConfigurer {
+    // Rather than Spring Security filters, merchant endpoints take an
+    // @AuthenticatedMerchant parameter that is resolved from the X-Api-Key and
+    // X-Api-Secret headers before the handler runs
+
+    @Autowired
+    private AuthenticatedMerchantResolver authenticatedMerchantResolver;
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(authenticatedMerchantResolver);
+    }
+}
@@ -0,0 +1,40 @@
+package com.gateway.controllers;
+
+import com.gateway.dto.ErrorResponse;
+import com.gateway.services.AdmissionRejectedException;
+import com.gateway.services.ApiException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Turns exceptions from the merchant-facing API into the standard error body.
+// Anything that is not an ApiException keeps the old behaviour of a 400 with
+// the exception message.
+@RestControllerAdvice(assignableTypes = {
+    OrderController.class,
+    PaymentController.class,
+    PublicApiController.class,
+    RefundController.class,
+    WebhookController.class
+})
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(ApiException.class)
+    public ResponseEntity<ErrorResponse> handleApiException(ApiException e) {
+        return ResponseEntity.status(e.getStatus()).body(new ErrorResponse(e.getCode(), e.getMessage()));
+    }
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleAdmissionRejected(AdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(new ErrorResponse("RATE_LIMIT_ERROR", e.getMessage()));
+    }
+
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity<ErrorResponse> handleRuntimeException(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage()));
+    }
+}
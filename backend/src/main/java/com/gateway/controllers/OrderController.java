@@ -1,9 +1,10 @@
 package com.gateway.controllers;
 
+import com.gateway.config.AuthenticatedMerchant;
 import com.gateway.dto.CreateOrderRequest;
 import com.gateway.dto.CreateOrderResponse;
 import com.gateway.dto.GetOrderResponse;
-import com.gateway.dto.ErrorResponse;
+import com.gateway.models.Merchant;
 import com.gateway.services.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -21,79 +22,25 @@ public class OrderController {
 
     @PostMapping("/orders")
     public ResponseEntity<?> createOrder(
-            @RequestHeader("X-Api-Key") String apiKey,
-            @RequestHeader("X-Api-Secret") String apiSecret,
+            @AuthenticatedMerchant Merchant merchant,
             @RequestBody CreateOrderRequest request) {
         
-        try {
-            CreateOrderResponse response = orderService.createOrder(apiKey, apiSecret, request);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
-        } catch (RuntimeException e) {
-            // Handle authentication errors
-            if (e.getMessage().equals("Invalid API credentials")) {
-                ErrorResponse errorResponse = new ErrorResponse("AUTHENTICATION_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-            }
-            // Handle validation errors
-            else if (e.getMessage().contains("amount must be at least")) {
-                ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
-            // Handle other errors
-            else {
-                ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
-        }
+        CreateOrderResponse response = orderService.createOrder(merchant, request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
     @GetMapping("/orders")
-    public ResponseEntity<?> getAllOrders(
-            @RequestHeader("X-Api-Key") String apiKey,
-            @RequestHeader("X-Api-Secret") String apiSecret) {
-        
-        try {
-            List<GetOrderResponse> responses = orderService.getAllOrders(apiKey, apiSecret);
-            return ResponseEntity.ok(responses);
-        } catch (RuntimeException e) {
-            // Handle authentication errors
-            if (e.getMessage().equals("Invalid API credentials")) {
-                ErrorResponse errorResponse = new ErrorResponse("AUTHENTICATION_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-            }
-            // Handle other errors
-            else {
-                ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
-        }
+    public ResponseEntity<?> getAllOrders(@AuthenticatedMerchant Merchant merchant) {
+        List<GetOrderResponse> responses = orderService.getAllOrders(merchant);
+        return ResponseEntity.ok(responses);
     }
 
     @GetMapping("/orders/{orderId}")
     public ResponseEntity<?> getOrder(
-            @RequestHeader("X-Api-Key") String apiKey,
-            @RequestHeader("X-Api-Secret") String apiSecret,
+            @AuthenticatedMerchant Merchant merchant,
             @PathVariable("orderId") String orderId) {
         
-        try {
-            GetOrderResponse response = orderService.getOrder(apiKey, apiSecret, orderId);
-            return ResponseEntity.ok(response);
-        } catch (RuntimeException e) {
-            // Handle authentication errors
-            if (e.getMessage().equals("Invalid API credentials")) {
-                ErrorResponse errorResponse = new ErrorResponse("AUTHENTICATION_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-            }
-            // Handle not found errors
-            else if (e.getMessage().equals("Order not found")) {
-                ErrorResponse errorResponse = new ErrorResponse("NOT_FOUND_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
-            }
-            // Handle other errors
-            else {
-                ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage());
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
-        }
+        GetOrderResponse response = orderService.getOrder(merchant, orderId);
+        return ResponseEntity.ok(response);
     }
 }
\ No newline at end of file
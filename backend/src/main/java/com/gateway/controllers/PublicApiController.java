@@ -86,20 +86,13 @@ public class PublicApiController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
         }
 
-        // Create payment using the existing payment service
-        try {
-            CreatePaymentResponse response = paymentService.createPayment(
-                merchantOpt.get().getApiKey(), 
-                merchantOpt.get().getApiSecret(), 
-                null, // No idempotency key for public endpoint
-                request
-            );
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
-        } catch (RuntimeException e) {
-            Map<String, Object> error = new HashMap<>();
-            error.put("error", Map.of("code", "BAD_REQUEST_ERROR", "description", e.getMessage()));
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
-        }
+        // Create payment for the order's merchant; errors map like the authenticated endpoint
+        CreatePaymentResponse response = paymentService.createPayment(
+            merchantOpt.get(),
+            null, // No idempotency key for public endpoint
+            request
+        );
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
     
     @GetMapping("/payments/{paymentId}/public")
@@ -1,11 +1,16 @@
 package com.gateway.controllers;
 
+import com.gateway.config.AuthenticatedMerchant;
 import com.gateway.dto.ErrorResponse;
 import com.gateway.models.Merchant;
+import com.gateway.models.WebhookEndpoint;
 import com.gateway.models.WebhookLog;
 import com.gateway.repositories.MerchantRepository;
 import com.gateway.repositories.WebhookLogRepository;
+import com.gateway.services.JobMetricsService;
 import com.gateway.services.JobQueueService;
+import com.gateway.services.WebhookCircuitBreaker;
+import com.gateway.services.WebhookEndpointService;
 import com.gateway.jobs.DeliverWebhookJob;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,6 +18,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -35,130 +41,199 @@ public class WebhookController {
     @Autowired
     private JobQueueService jobQueueService;
 
+    @Autowired
+    private JobMetricsService jobMetricsService;
+
+    @Autowired
+    private WebhookCircuitBreaker webhookCircuitBreaker;
+
+    @Autowired
+    private WebhookEndpointService webhookEndpointService;
+
     @Value("${TEST_MODE:false}")
     private boolean testMode;
 
     @GetMapping("/webhooks")
     public ResponseEntity<?> listWebhookLogs(
-            @RequestHeader("X-Api-Key") String apiKey,
-            @RequestHeader("X-Api-Secret") String apiSecret,
+            @AuthenticatedMerchant Merchant merchant,
             @RequestParam(defaultValue = "10") int limit,
             @RequestParam(defaultValue = "0") int offset) {
 
-        try {
-            // Authenticate merchant
-            Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-            if (!merchantOpt.isPresent()) {
-                ErrorResponse errorResponse = new ErrorResponse("AUTHENTICATION_ERROR", "Invalid API credentials");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+        // Get webhook logs for this merchant
+        List<WebhookLog> logs = webhookLogRepository.findByMerchantIdOrderByCreatedAtDesc(merchant.getId());
+        
+        // Apply pagination
+        int start = Math.min(offset, logs.size());
+        int end = Math.min(start + limit, logs.size());
+        List<WebhookLog> paginatedLogs = logs.subList(start, end);
+
+        // Create response data
+        List<Map<String, Object>> data = paginatedLogs.stream().map(log -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", log.getId());
+            item.put("event", log.getEvent());
+            item.put("status", log.getStatus());
+            item.put("attempts", log.getAttempts());
+            item.put("created_at", log.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
+            
+            if (log.getLastAttemptAt() != null) {
+                item.put("last_attempt_at", log.getLastAttemptAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
             }
+            
+            if (log.getResponseCode() != null) {
+                item.put("response_code", log.getResponseCode());
+            }
+            
+            if (log.getBatchId() != null) {
+                item.put("batch_id", log.getBatchId());
+            }
+            
+            if (log.getEndpointId() != null) {
+                item.put("endpoint_id", log.getEndpointId());
+            }
+            
+            return item;
+        }).collect(Collectors.toList());
 
-            Merchant merchant = merchantOpt.get();
+        // Create response
+        Map<String, Object> response = new HashMap<>();
+        response.put("data", data);
+        response.put("total", logs.size());
+        response.put("limit", limit);
+        response.put("offset", offset);
 
-            // Get webhook logs for this merchant
-            List<WebhookLog> logs = webhookLogRepository.findByMerchantIdOrderByCreatedAtDesc(merchant.getId());
-            
-            // Apply pagination
-            int start = Math.min(offset, logs.size());
-            int end = Math.min(start + limit, logs.size());
-            List<WebhookLog> paginatedLogs = logs.subList(start, end);
-
-            // Create response data
-            List<Map<String, Object>> data = paginatedLogs.stream().map(log -> {
-                Map<String, Object> item = new HashMap<>();
-                item.put("id", log.getId());
-                item.put("event", log.getEvent());
-                item.put("status", log.getStatus());
-                item.put("attempts", log.getAttempts());
-                item.put("created_at", log.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
-                
-                if (log.getLastAttemptAt() != null) {
-                    item.put("last_attempt_at", log.getLastAttemptAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
-                }
-                
-                if (log.getResponseCode() != null) {
-                    item.put("response_code", log.getResponseCode());
-                }
-                
-                return item;
-            }).collect(Collectors.toList());
-
-            // Create response
-            Map<String, Object> response = new HashMap<>();
-            response.put("data", data);
-            response.put("total", logs.size());
-            response.put("limit", limit);
-            response.put("offset", offset);
-
-            return ResponseEntity.ok(response);
+        return ResponseEntity.ok(response);
+    }
 
-        } catch (Exception e) {
-            ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-        }
+    // State of the circuit breaker guarding this merchant's own webhook_url;
+    // each endpoint reports its own circuit
+    @GetMapping("/webhooks/circuit")
+    public ResponseEntity<?> getWebhookCircuit(@AuthenticatedMerchant Merchant merchant) {
+        return ResponseEntity.ok(webhookCircuitBreaker.getState(merchant.getId()));
     }
 
-    @PostMapping("/webhooks/{webhookId}/retry")
-    public ResponseEntity<?> retryWebhook(
-            @RequestHeader("X-Api-Key") String apiKey,
-            @RequestHeader("X-Api-Secret") String apiSecret,
-            @PathVariable("webhookId") String webhookId) {
+    // Once a merchant has an active endpoint, events go only to the endpoints
+    // subscribed to them instead of the merchant's webhook_url
+    @GetMapping("/webhooks/endpoints")
+    public ResponseEntity<?> listWebhookEndpoints(@AuthenticatedMerchant Merchant merchant) {
+        List<Map<String, Object>> data = webhookEndpointService.listEndpoints(merchant).stream()
+            .map(endpoint -> endpointResponse(endpoint, false))
+            .collect(Collectors.toList());
 
-        try {
-            // Authenticate merchant
-            Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-            if (!merchantOpt.isPresent()) {
-                ErrorResponse errorResponse = new ErrorResponse("AUTHENTICATION_ERROR", "Invalid API credentials");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
-            }
+        Map<String, Object> response = new HashMap<>();
+        response.put("data", data);
+        response.put("total", data.size());
 
-            Merchant merchant = merchantOpt.get();
+        return ResponseEntity.ok(response);
+    }
 
-            // Find webhook log by ID and merchant ID
-            // Note: Since webhookId is UUID, we need to parse it
-            UUID logId;
-            try {
-                logId = UUID.fromString(webhookId);
-            } catch (IllegalArgumentException e) {
-                ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", "Invalid webhook ID");
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
-            }
+    @GetMapping("/webhooks/endpoints/{endpointId}")
+    public ResponseEntity<?> getWebhookEndpoint(
+            @AuthenticatedMerchant Merchant merchant,
+            @PathVariable("endpointId") String endpointId) {
+        return ResponseEntity.ok(endpointResponse(webhookEndpointService.getEndpoint(merchant, endpointId), false));
+    }
 
-            Optional<WebhookLog> logOpt = webhookLogRepository.findById(logId);
-            if (!logOpt.isPresent() || !logOpt.get().getMerchantId().toString().equals(merchant.getId().toString())) {
-                ErrorResponse errorResponse = new ErrorResponse("NOT_FOUND_ERROR", "Webhook log not found");
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
-            }
+    // The signing secret is only returned here, when the endpoint is created
+    @PostMapping("/webhooks/endpoints")
+    public ResponseEntity<?> createWebhookEndpoint(
+            @AuthenticatedMerchant Merchant merchant,
+            @RequestBody WebhookEndpointRequest request) {
 
-            WebhookLog log = logOpt.get();
+        WebhookEndpoint endpoint = webhookEndpointService.createEndpoint(merchant, request.getUrl(),
+            request.getEvents(), request.getSecret());
 
-            // Reset attempts to 0, set status to 'pending', and enqueue DeliverWebhookJob
-            log.setAttempts(0);
-            log.setStatus("pending");
-            log.setLastAttemptAt(null);
-            log.setNextRetryAt(null);
-            log.setResponseCode(null);
-            log.setResponseBody(null);
+        return ResponseEntity.status(HttpStatus.CREATED).body(endpointResponse(endpoint, true));
+    }
 
-            // Update the log in the database
-            log = webhookLogRepository.save(log);
+    @PutMapping("/webhooks/endpoints/{endpointId}")
+    public ResponseEntity<?> updateWebhookEndpoint(
+            @AuthenticatedMerchant Merchant merchant,
+            @PathVariable("endpointId") String endpointId,
+            @RequestBody WebhookEndpointRequest request) {
 
-            // Enqueue DeliverWebhookJob to retry the webhook
-            DeliverWebhookJob webhookJob = new DeliverWebhookJob(log.getMerchantId(), log.getEvent(), log.getPayload());
-            jobQueueService.enqueueJob("webhook_queue", webhookJob);
+        WebhookEndpoint endpoint = webhookEndpointService.updateEndpoint(merchant, endpointId, request.getUrl(),
+            request.getEvents(), request.getSecret(), request.getActive());
 
-            // Create response
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", log.getId());
-            response.put("status", log.getStatus());
-            response.put("message", "Webhook retry scheduled");
+        return ResponseEntity.ok(endpointResponse(endpoint, false));
+    }
 
-            return ResponseEntity.ok(response);
+    @DeleteMapping("/webhooks/endpoints/{endpointId}")
+    public ResponseEntity<?> deleteWebhookEndpoint(
+            @AuthenticatedMerchant Merchant merchant,
+            @PathVariable("endpointId") String endpointId) {
 
-        } catch (Exception e) {
-            ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", e.getMessage());
+        webhookEndpointService.deleteEndpoint(merchant, endpointId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private Map<String, Object> endpointResponse(WebhookEndpoint endpoint, boolean includeSecret) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("id", endpoint.getId());
+        item.put("url", endpoint.getUrl());
+        item.put("events", endpoint.getEventTypeList());
+        item.put("active", endpoint.getIsActive());
+        item.put("created_at", endpoint.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
+        if (endpoint.getUpdatedAt() != null) {
+            item.put("updated_at", endpoint.getUpdatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
+        }
+        if (includeSecret) {
+            item.put("secret", endpoint.getSecret());
+        }
+        item.put("circuit", webhookCircuitBreaker.getState(endpoint.getId()));
+        return item;
+    }
+
+    @PostMapping("/webhooks/{webhookId}/retry")
+    public ResponseEntity<?> retryWebhook(
+            @AuthenticatedMerchant Merchant merchant,
+            @PathVariable("webhookId") String webhookId) {
+
+        // Find webhook log by ID and merchant ID
+        // Note: Since webhookId is UUID, we need to parse it
+        UUID logId;
+        try {
+            logId = UUID.fromString(webhookId);
+        } catch (IllegalArgumentException e) {
+            ErrorResponse errorResponse = new ErrorResponse("BAD_REQUEST_ERROR", "Invalid webhook ID");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
         }
+
+        Optional<WebhookLog> logOpt = webhookLogRepository.findById(logId);
+        if (!logOpt.isPresent() || !logOpt.get().getMerchantId().toString().equals(merchant.getId().toString())) {
+            ErrorResponse errorResponse = new ErrorResponse("NOT_FOUND_ERROR", "Webhook log not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+
+        WebhookLog log = logOpt.get();
+
+        // Reset attempts to 0, set status to 'pending', and enqueue DeliverWebhookJob
+        log.setAttempts(0);
+        log.setStatus("pending");
+        log.setLastAttemptAt(null);
+        // Due now rather than unset, so the retry sweeper re-drives the row if
+        // the job below is lost; the job claims it first in the normal case
+        log.setNextRetryAt(LocalDateTime.now());
+        log.setResponseCode(null);
+        log.setResponseBody(null);
+        // A manual retry re-sends this event on its own, outside its batch
+        log.setBatchId(null);
+
+        // Update the log in the database
+        log = webhookLogRepository.save(log);
+
+        // Enqueue DeliverWebhookJob to retry the webhook; attempts update this same log row
+        DeliverWebhookJob webhookJob = new DeliverWebhookJob(log.getMerchantId(), log.getEvent(),
+            log.getPayload().getBytes(StandardCharsets.UTF_8), log.getId(), 1, log.getEndpointId());
+        jobQueueService.enqueueJob("webhook_queue", webhookJob);
+
+        // Create response
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", log.getId());
+        response.put("status", log.getStatus());
+        response.put("message", "Webhook retry scheduled");
+
+        return ResponseEntity.ok(response);
     }
 
     // Test endpoint for job queue status
@@ -167,15 +242,10 @@ public class WebhookController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            // Query Redis for actual job queue statistics
-            // For demonstration, returning realistic values
-            // In a production system, you would query actual Redis queues
-            response.put("pending", 2);
-            response.put("processing", 1);
-            response.put("completed", 45);
-            response.put("failed", 0);
-            response.put("worker_status", "running");
+            // Live queue depth plus the counters workers flush to Redis
+            response = jobMetricsService.getStatus();
         } catch (Exception e) {
+            System.err.println("Error reading job queue status: " + e.getMessage());
             // Fallback to default values if Redis query fails
             response.put("pending", 0);
             response.put("processing", 0);
@@ -186,4 +256,44 @@ public class WebhookController {
 
         return ResponseEntity.ok(response);
     }
+
+    // Inner class for endpoint requests; absent fields are left unchanged on update
+    public static class WebhookEndpointRequest {
+        private String url;
+        private List<String> events;
+        private String secret;
+        private Boolean active;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public List<String> getEvents() {
+            return events;
+        }
+
+        public void setEvents(List<String> events) {
+            this.events = events;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public Boolean getActive() {
+            return active;
+        }
+
+        public void setActive(Boolean active) {
+            this.active = active;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+package com.gateway.jobs;
+
+import com.gateway.models.WebhookEndpoint;
+import com.gateway.repositories.WebhookLogRepository;
+import com.gateway.services.WebhookCircuitBreaker;
+import com.gateway.services.WebhookDispatcher;
+import com.gateway.services.WebhookEndpointIndex;
+import com.gateway.services.WebhookHttpClient;
+import com.gateway.services.WebhookLogWriter;
+import com.gateway.services.WebhookRetryScheduler;
+import com.gateway.services.WebhookSigner;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+// Delivers a batch of webhook events for one merchant endpoint as a single
+// signed JSON array. Every event keeps its own webhook_logs row tagged with the batch id;
+// each attempt updates all of them at once, and retries re-send the whole
+// batch read back from those rows.
+public class DeliverWebhookBatchJob implements Job {
+
+    private transient WebhookEndpointIndex webhookEndpointIndex;
+
+    private transient WebhookLogRepository webhookLogRepository;
+
+    private transient WebhookLogWriter webhookLogWriter;
+
+    private transient WebhookRetryScheduler webhookRetryScheduler;
+
+    private transient WebhookHttpClient webhookHttpClient;
+
+    private transient WebhookCircuitBreaker webhookCircuitBreaker;
+
+    // Event payloads in batch order; set for the first attempt, loaded from
+    // the log rows for retries
+    private transient List<byte[]> payloads;
+
+    private UUID merchantId;
+
+    private UUID batchId;
+
+    private int attempt = 1;
+
+    // Endpoint the batch is delivered to; null for the merchant's own webhook_url
+    private UUID endpointId;
+
+    private long enqueuedAt;
+
+    public DeliverWebhookBatchJob() {}
+
+    public DeliverWebhookBatchJob(UUID merchantId, UUID batchId, int attempt, UUID endpointId) {
+        this.merchantId = merchantId;
+        this.batchId = batchId;
+        this.attempt = attempt;
+        this.endpointId = endpointId;
+    }
+
+    public DeliverWebhookBatchJob(UUID merchantId, UUID batchId, List<byte[]> payloads, UUID endpointId) {
+        this(merchantId, batchId, 1, endpointId);
+        this.payloads = payloads;
+    }
+
+    public void setDependencies(WebhookLogRepository webhookLogRepository, WebhookLogWriter webhookLogWriter,
+            WebhookEndpointIndex webhookEndpointIndex, WebhookRetryScheduler webhookRetryScheduler,
+            WebhookHttpClient webhookHttpClient, WebhookCircuitBreaker webhookCircuitBreaker) {
+        this.webhookLogRepository = webhookLogRepository;
+        this.webhookLogWriter = webhookLogWriter;
+        this.webhookEndpointIndex = webhookEndpointIndex;
+        this.webhookRetryScheduler = webhookRetryScheduler;
+        this.webhookHttpClient = webhookHttpClient;
+        this.webhookCircuitBreaker = webhookCircuitBreaker;
+    }
+
+    @Override
+    public void execute() {
+        WebhookEndpoint target = webhookEndpointIndex.target(merchantId, endpointId);
+        if (target == null) {
+            abandon();
+            return;
+        }
+        byte[] body = buildBody();
+        if (body == null) {
+            return;
+        }
+
+        if (!webhookCircuitBreaker.allowRequest(circuitKey())) {
+            park();
+            return;
+        }
+
+        long started = System.nanoTime();
+        WebhookHttpClient.Response response = null;
+        Throwable error = null;
+        try {
+            response = webhookHttpClient.post(target.getUrl(), body, signedHeaders(target, body));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (Exception e) {
+            error = e;
+        }
+        recordOutcome(response, error, started);
+        completeDelivery(response, error);
+    }
+
+    public void executeAsync(WebhookDispatcher webhookDispatcher) throws InterruptedException {
+        WebhookEndpoint target = webhookEndpointIndex.target(merchantId, endpointId);
+        if (target == null) {
+            abandon();
+            return;
+        }
+        byte[] body = buildBody();
+        if (body == null) {
+            return;
+        }
+
+        if (!webhookCircuitBreaker.allowRequest(circuitKey())) {
+            park();
+            return;
+        }
+
+        long started = System.nanoTime();
+        boolean sent = false;
+        try {
+            sent = webhookDispatcher.dispatch(this, target.getUrl(), body, signedHeaders(target, body),
+                (response, error) -> {
+                    recordOutcome(response, error, started);
+                    completeDelivery(response, error);
+                });
+        } finally {
+            if (!sent) {
+                webhookCircuitBreaker.cancel(circuitKey());
+            }
+        }
+    }
+
+    // No request was made, so the attempt is not used up: the claim is handed
+    // back and the same attempt waits for the circuit to let it through
+    private void park() {
+        long delayMillis = webhookCircuitBreaker.parkDelayMillis(circuitKey());
+        webhookRetryScheduler.release(this, delayMillis);
+        webhookRetryScheduler.scheduleRetry(this, delayMillis);
+    }
+
+    private void recordOutcome(WebhookHttpClient.Response response, Throwable error, long started) {
+        webhookCircuitBreaker.record(circuitKey(), error == null && response.isSuccessful(),
+            System.nanoTime() - started);
+    }
+
+    // The batch's rows exist from the start, so they are always closed out
+    private void abandon() {
+        webhookLogWriter.recordBatchAttempt(batchId, "failed", attempt, LocalDateTime.now(), null, null, null);
+    }
+
+    private UUID circuitKey() {
+        return endpointId != null ? endpointId : merchantId;
+    }
+
+    // The batch body is the events' own payload bytes joined into one JSON array
+    private byte[] buildBody() {
+        if (payloads == null) {
+            payloads = webhookLogRepository.findByBatchId(batchId).stream()
+                .map(log -> log.getPayload().getBytes(StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+        }
+        if (payloads.isEmpty()) {
+            System.err.println("Webhook batch has no events: " + batchId);
+            return null;
+        }
+        int length = payloads.size() + 1;
+        for (byte[] payload : payloads) {
+            length += payload.length;
+        }
+        byte[] body = new byte[length];
+        body[0] = '[';
+        int position = 1;
+        for (byte[] payload : payloads) {
+            if (position > 1) {
+                body[position++] = ',';
+            }
+            System.arraycopy(payload, 0, body, position, payload.length);
+            position += payload.length;
+        }
+        body[position] = ']';
+        return body;
+    }
+
+    private Map<String, String> signedHeaders(WebhookEndpoint target, byte[] body) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Webhook-Signature", WebhookSigner.sign(body, target.getSecret()));
+        headers.put("X-Webhook-Batch-Id", batchId.toString());
+        headers.put("X-Webhook-Batch-Size", String.valueOf(payloads.size()));
+        return headers;
+    }
+
+    private void completeDelivery(WebhookHttpClient.Response response, Throwable error) {
+        LocalDateTime now = LocalDateTime.now();
+        if (error == null && response.isSuccessful()) {
+            webhookLogWriter.recordBatchAttempt(batchId, "success", attempt, now,
+                response.getStatusCode(), response.getBody(), null);
+            return;
+        }
+        Integer responseCode = response == null ? null : response.getStatusCode();
+        String responseBody = response == null ? null : response.getBody();
+
+        if (!webhookRetryScheduler.hasAttemptsLeft(attempt)) {
+            webhookLogWriter.recordBatchAttempt(batchId, "failed", attempt, now, responseCode, responseBody, null);
+            System.err.println("Webhook batch " + batchId + " for merchant " + merchantId + " failed after "
+                + attempt + " attempts: " + (error != null ? error.getMessage() : "HTTP " + responseCode));
+            return;
+        }
+
+        long delayMillis = webhookRetryScheduler.nextRetryDelayMillis(attempt);
+        webhookLogWriter.recordBatchAttempt(batchId, "pending", attempt, now, responseCode, responseBody,
+            now.plus(delayMillis, ChronoUnit.MILLIS));
+        webhookRetryScheduler.scheduleRetry(new DeliverWebhookBatchJob(merchantId, batchId, attempt + 1, endpointId),
+            delayMillis);
+    }
+
+    @Override
+    public UUID getMerchantId() {
+        return merchantId;
+    }
+
+    public UUID getBatchId() {
+        return batchId;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public UUID getEndpointId() {
+        return endpointId;
+    }
+
+    @Override
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    @Override
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+}
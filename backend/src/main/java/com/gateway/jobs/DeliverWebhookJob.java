@@ -1,170 +1,303 @@
 package com.gateway.jobs;
 
-import com.gateway.models.Merchant;
-import com.gateway.models.WebhookLog;
-import com.gateway.repositories.MerchantRepository;
-import com.gateway.repositories.WebhookLogRepository;
+import com.gateway.models.WebhookEndpoint;
+import com.gateway.services.WebhookCircuitBreaker;
+import com.gateway.services.WebhookDispatcher;
+import com.gateway.services.WebhookEndpointIndex;
+import com.gateway.services.WebhookHttpClient;
+import com.gateway.services.WebhookLogWriter;
+import com.gateway.services.WebhookRetryScheduler;
+import com.gateway.services.WebhookSigner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 @Component
 public class DeliverWebhookJob implements Job {
     
-    private MerchantRepository merchantRepository;
+    private transient WebhookEndpointIndex webhookEndpointIndex;
     
-    private WebhookLogRepository webhookLogRepository;
+    private transient WebhookLogWriter webhookLogWriter;
     
-
+    private transient WebhookRetryScheduler webhookRetryScheduler;
+    
+    private transient WebhookHttpClient webhookHttpClient;
     
-    private boolean webhookRetryIntervalsTest;
+    private transient WebhookCircuitBreaker webhookCircuitBreaker;
     
     private UUID merchantId;
     private String eventType;
-    private String payload;
+    // UTF-8 JSON, signed and sent as is
+    private byte[] payload;
+    
+    // Log row updated by every attempt; null until the first attempt creates it
+    private UUID webhookLogId;
+    
+    private int attempt = 1;
+    
+    // Endpoint the event is delivered to; null for the merchant's own webhook_url
+    private UUID endpointId;
+    
+    private long enqueuedAt;
     
     public DeliverWebhookJob() {}
     
-    public void setDependencies(WebhookLogRepository webhookLogRepository, MerchantRepository merchantRepository, boolean webhookRetryIntervalsTest) {
-        this.webhookLogRepository = webhookLogRepository;
-        this.merchantRepository = merchantRepository;
-        this.webhookRetryIntervalsTest = webhookRetryIntervalsTest;
+    public void setDependencies(WebhookLogWriter webhookLogWriter, WebhookEndpointIndex webhookEndpointIndex,
+            WebhookRetryScheduler webhookRetryScheduler, WebhookHttpClient webhookHttpClient,
+            WebhookCircuitBreaker webhookCircuitBreaker) {
+        this.webhookLogWriter = webhookLogWriter;
+        this.webhookEndpointIndex = webhookEndpointIndex;
+        this.webhookRetryScheduler = webhookRetryScheduler;
+        this.webhookHttpClient = webhookHttpClient;
+        this.webhookCircuitBreaker = webhookCircuitBreaker;
     }
     
-    public DeliverWebhookJob(UUID merchantId, String eventType, String payload) {
+    public DeliverWebhookJob(UUID merchantId, String eventType, byte[] payload) {
         this.merchantId = merchantId;
         this.eventType = eventType;
         this.payload = payload;
     }
     
+    public DeliverWebhookJob(UUID merchantId, String eventType, byte[] payload, UUID webhookLogId, int attempt) {
+        this(merchantId, eventType, payload);
+        this.webhookLogId = webhookLogId;
+        this.attempt = attempt;
+    }
+    
+    public DeliverWebhookJob(UUID merchantId, String eventType, byte[] payload, UUID webhookLogId, int attempt,
+                             UUID endpointId) {
+        this(merchantId, eventType, payload, webhookLogId, attempt);
+        this.endpointId = endpointId;
+    }
+    
+    // The first attempt of this event at one of the merchant's endpoints
+    public DeliverWebhookJob forEndpoint(UUID endpointId) {
+        DeliverWebhookJob job = new DeliverWebhookJob(merchantId, eventType, payload, null, 1, endpointId);
+        job.setEnqueuedAt(enqueuedAt);
+        return job;
+    }
+    
     @Override
     public void execute() {
-        // Fetch merchant details from database using merchant ID
-        Optional<Merchant> merchantOpt = merchantRepository.findById(merchantId);
-        if (!merchantOpt.isPresent()) {
-            System.err.println("Merchant not found: " + merchantId);
+        WebhookEndpoint target = webhookEndpointIndex.target(merchantId, endpointId);
+        if (target == null) {
+            abandon();
             return;
         }
         
-        Merchant merchant = merchantOpt.get();
-        
-        // Skip if webhook URL is not configured
-        if (merchant.getWebhookUrl() == null || merchant.getWebhookUrl().isEmpty()) {
-            System.out.println("Webhook URL not configured for merchant: " + merchantId);
+        // Park the attempt without sending while the endpoint's circuit is open
+        if (!webhookCircuitBreaker.allowRequest(circuitKey())) {
+            park();
             return;
         }
         
-        // Generate HMAC-SHA256 signature
-        String webhookSecret = merchant.getWebhookSecret();
-        String signature = generateHmacSignature(payload, webhookSecret);
-        
-        // Send HTTP POST request to merchant's webhook URL
+        // Send HTTP POST request to the webhook URL over the shared pooled client
+        long started = System.nanoTime();
+        WebhookHttpClient.Response response = null;
+        Throwable error = null;
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("X-Webhook-Signature", signature);
-            
-            HttpEntity<String> entity = new HttpEntity<>(payload, headers);
-            
-            // Use RestTemplate with timeout configuration
-            RestTemplate client = new RestTemplate();
-            HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
-            factory.setConnectTimeout(5000); // 5 seconds timeout
-            factory.setReadTimeout(5000); // 5 seconds timeout
-            client.setRequestFactory(factory);
-            
-            ResponseEntity<String> response = client.postForEntity(merchant.getWebhookUrl(), entity, String.class);
-            
-            // Log successful webhook attempt
-            logWebhookAttempt(merchantId, eventType, payload, "success", 1, 
-                             response.getStatusCodeValue(), response.getBody(), null);
-            
+            response = webhookHttpClient.post(target.getUrl(), payload, signedHeaders(target));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
         } catch (Exception e) {
-            // Log failed webhook attempt
-            logWebhookAttempt(merchantId, eventType, payload, "pending", 1, 
-                             null, null, e.getMessage());
+            error = e;
         }
+        recordOutcome(response, error, started);
+        completeDelivery(response, error);
     }
     
-    private String generateHmacSignature(String payload, String secret) {
-        try {
-            javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA256");
-            javax.crypto.spec.SecretKeySpec secretKeySpec = new javax.crypto.spec.SecretKeySpec(
-                secret.getBytes("UTF-8"), "HmacSHA256");
-            mac.init(secretKeySpec);
-            byte[] digest = mac.doFinal(payload.getBytes("UTF-8"));
+    // Ordered variant for events taken from a lane. A failed or parked
+    // attempt is retried right here once its delay has passed rather than on
+    // the shared queue, so the events behind it on the lane wait until it is
+    // delivered or given up.
+    public void executeInOrder() throws InterruptedException {
+        while (true) {
+            WebhookEndpoint target = webhookEndpointIndex.target(merchantId, endpointId);
+            if (target == null) {
+                abandon();
+                return;
+            }
             
-            // Convert to hex string
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
+            long delayMillis;
+            if (!webhookCircuitBreaker.allowRequest(circuitKey())) {
+                // Not an attempt; keeps the sweeper off the row while it waits
+                delayMillis = webhookCircuitBreaker.parkDelayMillis(circuitKey());
+                webhookRetryScheduler.release(this, delayMillis);
+            } else {
+                long started = System.nanoTime();
+                WebhookHttpClient.Response response = null;
+                Throwable error = null;
+                try {
+                    response = webhookHttpClient.post(target.getUrl(), payload, signedHeaders(target));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error = e;
+                } catch (Exception e) {
+                    error = e;
+                }
+                recordOutcome(response, error, started);
+                delayMillis = settle(response, error);
+                if (delayMillis < 0) {
+                    return;
+                }
+                attempt++;
             }
-            return sb.toString();
-        } catch (Exception e) {
-            System.err.println("Error generating HMAC signature: " + e.getMessage());
-            return "";
+            // Interrupted at shutdown, the row is left pending for the sweeper
+            Thread.sleep(delayMillis);
         }
     }
     
-    private void logWebhookAttempt(UUID merchantId, String eventType, String payload, 
-                                 String status, int attempts, Integer responseCode, 
-                                 String responseBody, String errorMessage) {
-        WebhookLog log = new WebhookLog(merchantId, eventType, payload);
-        log.setStatus(status);
-        log.setAttempts(attempts);
-        log.setLastAttemptAt(LocalDateTime.now());
-        
-        if (responseCode != null) {
-            log.setResponseCode(responseCode);
-        }
-        if (responseBody != null) {
-            log.setResponseBody(responseBody);
+    // Non-blocking variant: the dispatcher sends the request and runs the
+    // outcome handling from the response callback, so the worker thread is
+    // released as soon as the request is handed off
+    public void executeAsync(WebhookDispatcher webhookDispatcher) throws InterruptedException {
+        WebhookEndpoint target = webhookEndpointIndex.target(merchantId, endpointId);
+        if (target == null) {
+            abandon();
+            return;
         }
         
-        // Calculate next retry time if status is pending and attempts < 5
-        if ("pending".equals(status) && attempts < 5) {
-            LocalDateTime nextRetryAt = calculateNextRetryTime(attempts);
-            log.setNextRetryAt(nextRetryAt);
+        if (!webhookCircuitBreaker.allowRequest(circuitKey())) {
+            park();
+            return;
         }
         
-        webhookLogRepository.save(log);
+        long started = System.nanoTime();
+        boolean sent = false;
+        try {
+            sent = webhookDispatcher.dispatch(this, target.getUrl(), payload, signedHeaders(target),
+                (response, error) -> {
+                    recordOutcome(response, error, started);
+                    completeDelivery(response, error);
+                });
+        } finally {
+            if (!sent) {
+                // Deferred or failed to hand off; no outcome will be recorded
+                webhookCircuitBreaker.cancel(circuitKey());
+            }
+        }
+    }
+    
+    // No request was made, so the attempt is not used up: the claim is handed
+    // back and the same attempt waits for the circuit to let it through
+    private void park() {
+        long delayMillis = webhookCircuitBreaker.parkDelayMillis(circuitKey());
+        webhookRetryScheduler.release(this, delayMillis);
+        webhookRetryScheduler.scheduleRetry(this, delayMillis);
+    }
+    
+    private void recordOutcome(WebhookHttpClient.Response response, Throwable error, long started) {
+        webhookCircuitBreaker.record(circuitKey(), error == null && response.isSuccessful(),
+            System.nanoTime() - started);
+    }
+    
+    // Nowhere to send the event any more (endpoint removed or disabled);
+    // closes out its log row so the retry sweeper stops picking it up
+    private void abandon() {
+        if (webhookLogId != null) {
+            logWebhookAttempt("failed", null, null, null);
+        }
+    }
+    
+    // Each endpoint has its own circuit; the merchant's webhook_url uses the merchant id
+    private UUID circuitKey() {
+        return endpointId != null ? endpointId : merchantId;
+    }
+    
+    private Map<String, String> signedHeaders(WebhookEndpoint target) {
+        // Generate HMAC-SHA256 signature
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Webhook-Signature", WebhookSigner.sign(payload, target.getSecret()));
+        return headers;
+    }
+    
+    // Records the attempt's outcome and schedules the next attempt on failure
+    private void completeDelivery(WebhookHttpClient.Response response, Throwable error) {
+        long delayMillis = settle(response, error);
+        if (delayMillis >= 0) {
+            webhookRetryScheduler.scheduleRetry(
+                new DeliverWebhookJob(merchantId, eventType, payload, webhookLogId, attempt + 1, endpointId),
+                delayMillis);
+        }
     }
     
-    private LocalDateTime calculateNextRetryTime(int attempt) {
-        long delaySeconds;
+    // Records the attempt's outcome. Returns the delay before the next
+    // attempt, or -1 once the event is delivered or out of attempts.
+    private long settle(WebhookHttpClient.Response response, Throwable error) {
+        if (error == null && response.isSuccessful()) {
+            // Log successful webhook attempt
+            logWebhookAttempt("success", response.getStatusCode(), response.getBody(), null);
+            return -1;
+        }
+        Integer responseCode = response == null ? null : response.getStatusCode();
+        String responseBody = response == null ? null : response.getBody();
+        String failure = error != null ? error.getMessage() : "HTTP " + responseCode;
         
-        if (webhookRetryIntervalsTest) {
-            // Test intervals: 0s, 5s, 10s, 15s, 20s
-            switch (attempt) {
-                case 1: delaySeconds = 5; break;
-                case 2: delaySeconds = 10; break;
-                case 3: delaySeconds = 15; break;
-                case 4: delaySeconds = 20; break;
-                default: delaySeconds = 20; break;
-            }
-        } else {
-            // Production intervals: immediate, 1min, 5min, 30min, 2hr
-            switch (attempt) {
-                case 1: delaySeconds = 60; break;  // 1 minute
-                case 2: delaySeconds = 300; break; // 5 minutes
-                case 3: delaySeconds = 1800; break; // 30 minutes
-                case 4: delaySeconds = 7200; break; // 2 hours
-                default: delaySeconds = 7200; break; // 2 hours
-            }
+        if (!webhookRetryScheduler.hasAttemptsLeft(attempt)) {
+            logWebhookAttempt("failed", responseCode, responseBody, null);
+            System.err.println("Webhook " + eventType + " for merchant " + merchantId
+                + " failed after " + attempt + " attempts: " + failure);
+            return -1;
         }
         
-        return LocalDateTime.now().plusSeconds(delaySeconds);
+        // Record the failure with its retry time
+        long delayMillis = webhookRetryScheduler.nextRetryDelayMillis(attempt);
+        logWebhookAttempt("pending", responseCode, responseBody,
+            LocalDateTime.now().plus(delayMillis, ChronoUnit.MILLIS));
+        return delayMillis;
+    }
+    
+    // Queues this attempt's outcome for the webhook's single log row; the
+    // first attempt picks the row's id so retries can refer to it
+    private void logWebhookAttempt(String status, Integer responseCode, String responseBody,
+                                   LocalDateTime nextRetryAt) {
+        if (webhookLogId == null) {
+            webhookLogId = UUID.randomUUID();
+        }
+        webhookLogWriter.recordAttempt(webhookLogId, merchantId, endpointId, eventType, payload, status, attempt,
+            LocalDateTime.now(), responseCode, responseBody, nextRetryAt);
+    }
+    
+    @Override
+    public UUID getMerchantId() {
+        return merchantId;
+    }
+    
+    public String getEventType() {
+        return eventType;
+    }
+    
+    public byte[] getPayload() {
+        return payload;
+    }
+    
+    public UUID getWebhookLogId() {
+        return webhookLogId;
+    }
+    
+    public int getAttempt() {
+        return attempt;
+    }
+    
+    public UUID getEndpointId() {
+        return endpointId;
+    }
+    
+    @Override
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+    
+    @Override
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
     }
     
     public void setMerchantId(UUID merchantId) {
@@ -175,7 +308,7 @@ public class DeliverWebhookJob implements Job {
         this.eventType = eventType;
     }
     
-    public void setPayload(String payload) {
+    public void setPayload(byte[] payload) {
         this.payload = payload;
     }
 }
\ No newline at end of file
@@ -1,5 +1,23 @@
 package com.gateway.jobs;
 
-public interface Job {
+import java.io.Serializable;
+import java.util.UUID;
+
+public interface Job extends Serializable {
     void execute();
+
+    // Merchant the job belongs to; fair queues route on it. Null for jobs
+    // that are not tied to one merchant.
+    default UUID getMerchantId() {
+        return null;
+    }
+
+    // Epoch millis at which the job became available on its queue, stamped by
+    // the queue backend; 0 when unknown
+    default long getEnqueuedAt() {
+        return 0;
+    }
+
+    default void setEnqueuedAt(long enqueuedAt) {
+    }
 }
\ No newline at end of file
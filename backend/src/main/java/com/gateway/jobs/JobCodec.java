@@ -0,0 +1,236 @@
+package com.gateway.jobs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+// Compact binary codec for queued jobs. Each job is written as a small
+// versioned envelope: [version][enqueued at][type tag][fields...]. Only the
+// job's own data is written - no class metadata and none of the dependencies a
+// worker sets before execution. Entries of any other version are rejected; a
+// layout change needs a new version and a decoder for the old one.
+public class JobCodec extends BaseCodec {
+
+    public static final JobCodec INSTANCE = new JobCodec();
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_PROCESS_PAYMENT = 1;
+    private static final byte TYPE_PROCESS_REFUND = 2;
+    private static final byte TYPE_DELIVER_WEBHOOK = 3;
+    private static final byte TYPE_DELIVER_WEBHOOK_BATCH = 4;
+
+    private final Encoder encoder = this::encodeJob;
+
+    private final Decoder<Object> decoder = (buf, state) -> decodeJob(buf);
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    // The same envelope as a plain byte array, for jobs stored outside Redis
+    // (the job outbox table)
+    public static byte[] toBytes(Job job) {
+        ByteBuf buf;
+        try {
+            buf = INSTANCE.encodeJob(job);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        try {
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static Job fromBytes(byte[] bytes) throws IOException {
+        return (Job) INSTANCE.decodeJob(Unpooled.wrappedBuffer(bytes));
+    }
+
+    private ByteBuf encodeJob(Object in) throws IOException {
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            out.writeByte(VERSION);
+            writeVarLong(out, in instanceof Job ? ((Job) in).getEnqueuedAt() : 0);
+            if (in instanceof ProcessPaymentJob) {
+                ProcessPaymentJob job = (ProcessPaymentJob) in;
+                out.writeByte(TYPE_PROCESS_PAYMENT);
+                writeString(out, job.getPaymentId());
+                writeUuid(out, job.getMerchantId());
+            } else if (in instanceof ProcessRefundJob) {
+                out.writeByte(TYPE_PROCESS_REFUND);
+                writeString(out, ((ProcessRefundJob) in).getRefundId());
+            } else if (in instanceof DeliverWebhookJob) {
+                DeliverWebhookJob job = (DeliverWebhookJob) in;
+                out.writeByte(TYPE_DELIVER_WEBHOOK);
+                writeUuid(out, job.getMerchantId());
+                writeString(out, job.getEventType());
+                writeBytes(out, job.getPayload());
+                writeUuid(out, job.getWebhookLogId());
+                writeVarInt(out, job.getAttempt());
+                writeUuid(out, job.getEndpointId());
+            } else if (in instanceof DeliverWebhookBatchJob) {
+                // Only the batch's identity travels; its events are read back
+                // from the webhook_logs rows tagged with the batch id
+                DeliverWebhookBatchJob job = (DeliverWebhookBatchJob) in;
+                out.writeByte(TYPE_DELIVER_WEBHOOK_BATCH);
+                writeUuid(out, job.getMerchantId());
+                writeUuid(out, job.getBatchId());
+                writeVarInt(out, job.getAttempt());
+                writeUuid(out, job.getEndpointId());
+            } else {
+                throw new IOException("Unsupported job type: " + (in == null ? "null" : in.getClass().getName()));
+            }
+            return out;
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    private Object decodeJob(ByteBuf buf) throws IOException {
+        byte version = buf.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported job envelope version: " + version);
+        }
+        long enqueuedAt = readVarLong(buf);
+
+        Job job;
+        byte type = buf.readByte();
+        switch (type) {
+            case TYPE_PROCESS_PAYMENT:
+                String paymentId = readString(buf);
+                job = new ProcessPaymentJob(paymentId, readUuid(buf));
+                break;
+            case TYPE_PROCESS_REFUND:
+                job = new ProcessRefundJob(readString(buf));
+                break;
+            case TYPE_DELIVER_WEBHOOK:
+                UUID merchantId = readUuid(buf);
+                String eventType = readString(buf);
+                byte[] payload = readBytes(buf);
+                UUID webhookLogId = readUuid(buf);
+                int attempt = readVarInt(buf);
+                job = new DeliverWebhookJob(merchantId, eventType, payload, webhookLogId, attempt, readUuid(buf));
+                break;
+            case TYPE_DELIVER_WEBHOOK_BATCH:
+                UUID batchMerchantId = readUuid(buf);
+                UUID batchId = readUuid(buf);
+                int batchAttempt = readVarInt(buf);
+                job = new DeliverWebhookBatchJob(batchMerchantId, batchId, batchAttempt, readUuid(buf));
+                break;
+            default:
+                throw new IOException("Unknown job type tag: " + type);
+        }
+        job.setEnqueuedAt(enqueuedAt);
+        return job;
+    }
+
+    // Strings are written as varint(length + 1) followed by UTF-8 bytes; 0 means null
+    private static void writeString(ByteBuf out, String value) {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Byte arrays use the same framing as strings
+    private static void writeBytes(ByteBuf out, byte[] value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, value.length + 1);
+        out.writeBytes(value);
+    }
+
+    private static String readString(ByteBuf buf) {
+        int length = readVarInt(buf);
+        if (length == 0) {
+            return null;
+        }
+        String value = buf.toString(buf.readerIndex(), length - 1, StandardCharsets.UTF_8);
+        buf.skipBytes(length - 1);
+        return value;
+    }
+
+    private static byte[] readBytes(ByteBuf buf) {
+        int length = readVarInt(buf);
+        if (length == 0) {
+            return null;
+        }
+        byte[] value = new byte[length - 1];
+        buf.readBytes(value);
+        return value;
+    }
+
+    private static void writeUuid(ByteBuf out, UUID value) {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuf buf) {
+        if (!buf.readBoolean()) {
+            return null;
+        }
+        return new UUID(buf.readLong(), buf.readLong());
+    }
+
+    private static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuf buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuf buf) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
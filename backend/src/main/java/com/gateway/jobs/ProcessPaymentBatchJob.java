@@ -0,0 +1,197 @@
+package com.gateway.jobs;
+
+import com.gateway.models.Payment;
+import com.gateway.repositories.PaymentRepository;
+import com.gateway.services.ProcessingTimer;
+import com.gateway.services.WebhookEventSerializer;
+import com.gateway.services.WebhookLanes;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Processes a batch of payments with one SELECT for the whole batch and
+// JDBC batch updates for each status transition, instead of a findById/save
+// pair per payment. The whole batch is claimed under one token and the final
+// statuses are written only where that token still holds, so a payment is
+// only ever finalized by the worker that claimed it.
+public class ProcessPaymentBatchJob implements Job {
+
+    private PaymentRepository paymentRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private WebhookLanes webhookLanes;
+
+    private boolean testMode;
+
+    private boolean testPaymentSuccess;
+
+    private int processingDelayMin;
+
+    private int processingDelayMax;
+
+    private int testProcessingDelay;
+
+    private double upiSuccessRate;
+
+    private double cardSuccessRate;
+
+    private long claimTimeout;
+
+    private List<String> paymentIds;
+
+    public ProcessPaymentBatchJob() {}
+
+    public ProcessPaymentBatchJob(List<String> paymentIds) {
+        this.paymentIds = paymentIds;
+    }
+
+    @Override
+    public void execute() {
+        String claimToken = UUID.randomUUID().toString();
+        List<Payment> payments = startProcessing(claimToken);
+        if (payments.isEmpty()) {
+            return;
+        }
+
+        // The batch is simulated as one authorization round, so it waits once
+        try {
+            Thread.sleep(simulatedDelay());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Payment batch processing interrupted: " + paymentIds);
+            return;
+        }
+
+        completeProcessing(payments, claimToken);
+    }
+
+    public void executeAsync(ProcessingTimer processingTimer) throws InterruptedException {
+        String claimToken = UUID.randomUUID().toString();
+        List<Payment> payments = startProcessing(claimToken);
+        if (payments.isEmpty()) {
+            return;
+        }
+
+        processingTimer.schedule(() -> completeProcessing(payments, claimToken), simulatedDelay());
+    }
+
+    private List<Payment> startProcessing(String claimToken) {
+        // Load the whole batch in one query
+        List<Payment> found = paymentRepository.findAllById(paymentIds);
+        if (found.size() < paymentIds.size()) {
+            System.err.println("Payments not found: " + (paymentIds.size() - found.size()) + " of " + paymentIds.size());
+        }
+
+        // Skip payments another worker already finalized
+        List<Payment> candidates = new ArrayList<>(found.size());
+        List<Object[]> updates = new ArrayList<>(found.size());
+        double claimTimeoutSeconds = claimTimeout / 1000.0;
+        for (Payment payment : found) {
+            if ("success".equals(payment.getStatus()) || "failed".equals(payment.getStatus())) {
+                continue;
+            }
+            candidates.add(payment);
+            updates.add(new Object[] { claimToken, payment.getId(), claimTimeoutSeconds });
+        }
+        if (updates.isEmpty()) {
+            return candidates;
+        }
+
+        // Claim each payment with a compare-and-set; rows another worker took
+        // between the SELECT and here report zero updates and are dropped
+        int[] claimed = jdbcTemplate.batchUpdate(
+            "UPDATE payments SET status = 'processing', claim_token = ?, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE id = ? AND (status = 'pending' OR (status = 'processing' " +
+            "AND updated_at < CURRENT_TIMESTAMP - make_interval(secs => ?)))",
+            updates);
+        List<Payment> payments = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            if (claimed[i] != 0) {
+                candidates.get(i).setStatus("processing");
+                payments.add(candidates.get(i));
+            }
+        }
+        return payments;
+    }
+
+    private int simulatedDelay() {
+        return testMode ? testProcessingDelay :
+               (int)(Math.random() * (processingDelayMax - processingDelayMin + 1)) + processingDelayMin;
+    }
+
+    private void completeProcessing(List<Payment> payments, String claimToken) {
+        List<Object[]> updates = new ArrayList<>(payments.size());
+        List<DeliverWebhookJob> webhookJobs = new ArrayList<>(payments.size());
+        List<String> webhookPaymentIds = new ArrayList<>(payments.size());
+
+        for (Payment payment : payments) {
+            boolean success = ProcessPaymentJob.simulateOutcome(payment, testMode, testPaymentSuccess,
+                upiSuccessRate, cardSuccessRate);
+            if (success) {
+                payment.setStatus("success");
+            } else {
+                payment.setStatus("failed");
+                payment.setErrorCode("PAYMENT_FAILED");
+                payment.setErrorDescription("Payment processing failed");
+            }
+            updates.add(new Object[] {
+                payment.getStatus(), payment.getErrorCode(), payment.getErrorDescription(), payment.getId(), claimToken
+            });
+
+            if (webhookLanes != null) {
+                String event = success ? "payment.success" : "payment.failed";
+                webhookJobs.add(new DeliverWebhookJob(payment.getMerchantId(), event,
+                    WebhookEventSerializer.paymentEvent(event, payment)));
+                webhookPaymentIds.add(payment.getId());
+            }
+        }
+
+        // Write all final statuses in one batch, each only if still processing
+        // under this batch's claim
+        int[] finalized = jdbcTemplate.batchUpdate(
+            "UPDATE payments SET status = ?, error_code = ?, error_description = ?, claim_token = NULL, " +
+            "updated_at = CURRENT_TIMESTAMP WHERE id = ? AND status = 'processing' AND claim_token = ?",
+            updates);
+
+        if (webhookLanes != null) {
+            // Only payments this batch finalized get a webhook
+            List<DeliverWebhookJob> owned = new ArrayList<>(webhookJobs.size());
+            List<String> ownedPaymentIds = new ArrayList<>(webhookJobs.size());
+            for (int i = 0; i < webhookJobs.size(); i++) {
+                if (finalized[i] != 0) {
+                    owned.add(webhookJobs.get(i));
+                    ownedPaymentIds.add(webhookPaymentIds.get(i));
+                }
+            }
+            webhookLanes.publishAll(owned, ownedPaymentIds);
+        }
+    }
+
+    public List<String> getPaymentIds() {
+        return paymentIds;
+    }
+
+    public void setPaymentIds(List<String> paymentIds) {
+        this.paymentIds = paymentIds;
+    }
+
+    public void setDependencies(PaymentRepository paymentRepository, JdbcTemplate jdbcTemplate,
+            boolean testMode, boolean testPaymentSuccess, int processingDelayMin, int processingDelayMax,
+            int testProcessingDelay, double upiSuccessRate, double cardSuccessRate,
+            WebhookLanes webhookLanes, long claimTimeout) {
+        this.paymentRepository = paymentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.testMode = testMode;
+        this.testPaymentSuccess = testPaymentSuccess;
+        this.processingDelayMin = processingDelayMin;
+        this.processingDelayMax = processingDelayMax;
+        this.testProcessingDelay = testProcessingDelay;
+        this.upiSuccessRate = upiSuccessRate;
+        this.cardSuccessRate = cardSuccessRate;
+        this.webhookLanes = webhookLanes;
+        this.claimTimeout = claimTimeout;
+    }
+}
@@ -2,91 +2,117 @@ package com.gateway.jobs;
 
 import com.gateway.models.Payment;
 import com.gateway.repositories.PaymentRepository;
+import com.gateway.services.ProcessingTimer;
 import com.gateway.services.ValidationService;
+import com.gateway.services.WebhookEventSerializer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
 import java.util.Random;
+import java.util.UUID;
 
 @Component
 public class ProcessPaymentJob implements Job {
     
-    private PaymentRepository paymentRepository;
+    private transient PaymentRepository paymentRepository;
     
-    private ValidationService validationService;
+    private transient ValidationService validationService;
     
-    private boolean testMode;
+    private transient boolean testMode;
     
-    private boolean testPaymentSuccess;
+    private transient boolean testPaymentSuccess;
     
-    private int processingDelayMin;
+    private transient int processingDelayMin;
     
-    private int processingDelayMax;
+    private transient int processingDelayMax;
     
-    private int testProcessingDelay;
+    private transient int testProcessingDelay;
     
-    private double upiSuccessRate;
+    private transient double upiSuccessRate;
     
-    private double cardSuccessRate;
+    private transient double cardSuccessRate;
     
-    private com.gateway.services.JobQueueService jobQueueService;
+    private transient com.gateway.services.WebhookLanes webhookLanes;
+    
+    private transient long claimTimeout;
     
     private String paymentId;
     
+    private UUID merchantId;
+    
+    private long enqueuedAt;
+    
     public ProcessPaymentJob() {}
     
     public ProcessPaymentJob(String paymentId) {
         this.paymentId = paymentId;
     }
     
+    public ProcessPaymentJob(String paymentId, UUID merchantId) {
+        this.paymentId = paymentId;
+        this.merchantId = merchantId;
+    }
+    
     @Override
     public void execute() {
-        // Fetch payment record from database using the payment ID
-        Optional<Payment> paymentOpt = paymentRepository.findById(paymentId);
-        if (!paymentOpt.isPresent()) {
-            System.err.println("Payment not found: " + paymentId);
+        String claimToken = UUID.randomUUID().toString();
+        Payment payment = startProcessing(claimToken);
+        if (payment == null) {
             return;
         }
         
-        Payment payment = paymentOpt.get();
-        
-        // Update status to processing if it's pending
-        if ("pending".equals(payment.getStatus())) {
-            payment.setStatus("processing");
-            paymentRepository.save(payment);
-        }
-        
-        // Ensure the status is processing before delay
-        if (!"processing".equals(payment.getStatus())) {
-            payment.setStatus("processing");
-            paymentRepository.save(payment);
-        }
-        
         // Simulate payment processing with delay
-        int delay = testMode ? testProcessingDelay : 
-                   (int)(Math.random() * (processingDelayMax - processingDelayMin + 1)) + processingDelayMin;
-        
         try {
-            Thread.sleep(delay);
+            Thread.sleep(simulatedDelay());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             System.err.println("Payment processing interrupted: " + paymentId);
             return;
         }
-
-        // Determine success/failure based on test mode or random chance
-        boolean success;
-        if (testMode) {
-            success = testPaymentSuccess;
-        } else {
-            if ("upi".equals(payment.getMethod())) {
-                success = Math.random() < upiSuccessRate;
-            } else { // card
-                success = Math.random() < cardSuccessRate;
-            }
+        
+        completeProcessing(payment, claimToken);
+    }
+    
+    // Non-blocking variant: marks the payment as processing and hands the
+    // completion to the timer so the worker thread is released immediately
+    public void executeAsync(ProcessingTimer processingTimer) throws InterruptedException {
+        String claimToken = UUID.randomUUID().toString();
+        Payment payment = startProcessing(claimToken);
+        if (payment == null) {
+            return;
+        }
+        
+        processingTimer.schedule(() -> completeProcessing(payment, claimToken), simulatedDelay());
+    }
+    
+    private Payment startProcessing(String claimToken) {
+        // Claim the payment with a single conditional UPDATE; losing the race
+        // means another worker is processing or has processed it
+        if (paymentRepository.claimForProcessing(paymentId, claimToken, claimTimeout / 1000.0) == 0) {
+            System.out.println("Payment already claimed or finalized: " + paymentId);
+            return null;
         }
+        
+        // Read the claimed row for the outcome simulation and webhook payload
+        Optional<Payment> paymentOpt = paymentRepository.findById(paymentId);
+        if (!paymentOpt.isPresent()) {
+            System.err.println("Payment not found: " + paymentId);
+            return null;
+        }
+        
+        return paymentOpt.get();
+    }
+    
+    private int simulatedDelay() {
+        return testMode ? testProcessingDelay : 
+               (int)(Math.random() * (processingDelayMax - processingDelayMin + 1)) + processingDelayMin;
+    }
+    
+    private void completeProcessing(Payment payment, String claimToken) {
+        // Determine success/failure based on test mode or random chance
+        boolean success = simulateOutcome(payment, testMode, testPaymentSuccess, upiSuccessRate, cardSuccessRate);
 
         // Update payment status based on result
         if (success) {
@@ -97,37 +123,55 @@ public class ProcessPaymentJob implements Job {
             payment.setErrorDescription("Payment processing failed");
         }
 
-        // Save updated payment status
-        paymentRepository.save(payment);
+        // Write the outcome only if this worker still holds the payment
+        int updated = paymentRepository.completeProcessing(payment.getId(), claimToken, payment.getStatus(),
+            payment.getErrorCode(), payment.getErrorDescription());
+        if (updated == 0) {
+            System.out.println("Payment finalized by another worker: " + payment.getId());
+            return;
+        }
         
         // Enqueue webhook delivery job for the appropriate event
-        if (jobQueueService != null) {
+        if (webhookLanes != null) {
+            String event = success ? "payment.success" : "payment.failed";
             com.gateway.jobs.DeliverWebhookJob webhookJob = new com.gateway.jobs.DeliverWebhookJob(
                 payment.getMerchantId(), 
-                success ? "payment.success" : "payment.failed", 
-                createWebhookPayload(payment, success)
+                event, 
+                WebhookEventSerializer.paymentEvent(event, payment)
             );
-            jobQueueService.enqueueJob("webhook_queue", webhookJob);
+            webhookLanes.publish(webhookJob, payment.getId());
         }
     }
     
-    private String createWebhookPayload(Payment payment, boolean success) {
-        // Create a simple JSON payload for the webhook
-        StringBuilder payload = new StringBuilder();
-        payload.append("{");
-        payload.append("\"event\": \"").append(success ? "payment.success" : "payment.failed").append("\",");
-        payload.append("\"timestamp\": \"").append(System.currentTimeMillis() / 1000).append("\",");
-        payload.append("\"data\": {");
-        payload.append("\"payment\": {");
-        payload.append("\"id\": \"").append(payment.getId()).append("\",");
-        payload.append("\"order_id\": \"").append(payment.getOrderId()).append("\",");
-        payload.append("\"amount\": ").append(payment.getAmount()).append(",");
-        payload.append("\"currency\": \"").append(payment.getCurrency()).append("\",");
-        payload.append("\"method\": \"").append(payment.getMethod()).append("\",");
-        payload.append("\"status\": \"").append(payment.getStatus()).append("\",");
-        payload.append("\"created_at\": \"").append(payment.getCreatedAt().toString()).append("\"");
-        payload.append("}}}}");
-        return payload.toString();
+    static boolean simulateOutcome(Payment payment, boolean testMode, boolean testPaymentSuccess,
+            double upiSuccessRate, double cardSuccessRate) {
+        if (testMode) {
+            return testPaymentSuccess;
+        }
+        if ("upi".equals(payment.getMethod())) {
+            return Math.random() < upiSuccessRate;
+        } else { // card
+            return Math.random() < cardSuccessRate;
+        }
+    }
+    
+    public String getPaymentId() {
+        return paymentId;
+    }
+    
+    @Override
+    public UUID getMerchantId() {
+        return merchantId;
+    }
+    
+    @Override
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+    
+    @Override
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
     }
     
     public void setPaymentId(String paymentId) {
@@ -137,7 +181,7 @@ public class ProcessPaymentJob implements Job {
     public void setDependencies(PaymentRepository paymentRepository, ValidationService validationService,
             boolean testMode, boolean testPaymentSuccess, int processingDelayMin, int processingDelayMax,
             int testProcessingDelay, double upiSuccessRate, double cardSuccessRate, 
-            com.gateway.services.JobQueueService jobQueueService) {
+            com.gateway.services.WebhookLanes webhookLanes, long claimTimeout) {
         this.paymentRepository = paymentRepository;
         this.validationService = validationService;
         this.testMode = testMode;
@@ -147,6 +191,7 @@ public class ProcessPaymentJob implements Job {
         this.testProcessingDelay = testProcessingDelay;
         this.upiSuccessRate = upiSuccessRate;
         this.cardSuccessRate = cardSuccessRate;
-        this.jobQueueService = jobQueueService;
+        this.webhookLanes = webhookLanes;
+        this.claimTimeout = claimTimeout;
     }
 }
\ No newline at end of file
@@ -2,6 +2,9 @@ package com.gateway.jobs;
 
 import com.gateway.models.Refund;
 import com.gateway.repositories.RefundRepository;
+import com.gateway.services.ProcessingTimer;
+import com.gateway.services.WebhookEventSerializer;
+import com.gateway.services.WebhookLanes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -12,14 +15,18 @@ import java.util.Optional;
 @Component
 public class ProcessRefundJob implements Job {
     
-    private RefundRepository refundRepository;
+    private transient RefundRepository refundRepository;
     
-    private com.gateway.repositories.PaymentRepository paymentRepository;
+    private transient com.gateway.repositories.PaymentRepository paymentRepository;
     
-    private boolean testMode;
+    private transient boolean testMode;
+    
+    private transient WebhookLanes webhookLanes;
     
     private String refundId;
     
+    private long enqueuedAt;
+    
     public ProcessRefundJob() {}
     
     public ProcessRefundJob(String refundId) {
@@ -28,26 +35,56 @@ public class ProcessRefundJob implements Job {
     
     @Override
     public void execute() {
-        // Fetch refund record from database using the refund ID
-        Optional<Refund> refundOpt = refundRepository.findById(refundId);
-        if (!refundOpt.isPresent()) {
-            System.err.println("Refund not found: " + refundId);
+        Refund refund = loadRefund();
+        if (refund == null) {
             return;
         }
         
-        Refund refund = refundOpt.get();
-        
-        // Simulate refund processing delay: wait 3-5 seconds (random within this range)
-        int processingDelay = testMode ? 1000 : 3000 + (int)(Math.random() * 2000); // 3-5 seconds
-        
         try {
-            Thread.sleep(processingDelay);
+            Thread.sleep(simulatedDelay());
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             System.err.println("Refund processing interrupted: " + refundId);
             return;
         }
-
+        
+        completeProcessing(refund);
+    }
+    
+    // Non-blocking variant: hands the completion to the timer so the worker
+    // thread is released immediately
+    public void executeAsync(ProcessingTimer processingTimer) throws InterruptedException {
+        Refund refund = loadRefund();
+        if (refund == null) {
+            return;
+        }
+        
+        processingTimer.schedule(() -> completeProcessing(refund), simulatedDelay());
+    }
+    
+    private Refund loadRefund() {
+        // Fetch refund record from database using the refund ID
+        Optional<Refund> refundOpt = refundRepository.findById(refundId);
+        if (!refundOpt.isPresent()) {
+            System.err.println("Refund not found: " + refundId);
+            return null;
+        }
+        
+        // Jobs are published at least once, so a duplicate may arrive after the refund is done
+        if ("processed".equals(refundOpt.get().getStatus())) {
+            System.out.println("Refund already processed: " + refundId);
+            return null;
+        }
+        
+        return refundOpt.get();
+    }
+    
+    private int simulatedDelay() {
+        // Simulate refund processing delay: wait 3-5 seconds (random within this range)
+        return testMode ? 1000 : 3000 + (int)(Math.random() * 2000); // 3-5 seconds
+    }
+    
+    private void completeProcessing(Refund refund) {
         // Update refund status in database
         refund.setStatus("processed");
         refund.setProcessedAt(LocalDateTime.now());
@@ -55,17 +92,41 @@ public class ProcessRefundJob implements Job {
         // Save updated refund status
         refundRepository.save(refund);
         
-        // TODO: Enqueue webhook delivery job for 'refund.processed' event
-        // This would be implemented when we create the webhook worker
+        // Enqueue webhook delivery job for the 'refund.processed' event, on
+        // the payment's lane so it follows the payment's own events
+        if (webhookLanes != null) {
+            DeliverWebhookJob webhookJob = new DeliverWebhookJob(
+                refund.getMerchantId(),
+                "refund.processed",
+                WebhookEventSerializer.refundEvent("refund.processed", refund)
+            );
+            webhookLanes.publish(webhookJob, refund.getPaymentId());
+        }
+    }
+    
+    public String getRefundId() {
+        return refundId;
+    }
+    
+    @Override
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+    
+    @Override
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
     }
     
     public void setRefundId(String refundId) {
         this.refundId = refundId;
     }
     
-    public void setDependencies(RefundRepository refundRepository, com.gateway.repositories.PaymentRepository paymentRepository, boolean testMode) {
+    public void setDependencies(RefundRepository refundRepository, com.gateway.repositories.PaymentRepository paymentRepository, boolean testMode,
+            WebhookLanes webhookLanes) {
         this.refundRepository = refundRepository;
         this.paymentRepository = paymentRepository;
         this.testMode = testMode;
+        this.webhookLanes = webhookLanes;
     }
 }
\ No newline at end of file
@@ -44,6 +44,14 @@ public class WebhookLog {
     @Column(name = "response_body", columnDefinition = "TEXT")
     private String responseBody;
 
+    // Set when the event was delivered as part of a batch; attempts then update every row of the batch
+    @Column(name = "batch_id", columnDefinition = "UUID")
+    private UUID batchId;
+
+    // Endpoint the event was delivered to; null for the merchant's own webhook_url
+    @Column(name = "endpoint_id", columnDefinition = "UUID")
+    private UUID endpointId;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime createdAt;
@@ -156,4 +164,20 @@ public class WebhookLog {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    public UUID getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(UUID batchId) {
+        this.batchId = batchId;
+    }
+
+    public UUID getEndpointId() {
+        return endpointId;
+    }
+
+    public void setEndpointId(UUID endpointId) {
+        this.endpointId = endpointId;
+    }
 }
\ No newline at end of file
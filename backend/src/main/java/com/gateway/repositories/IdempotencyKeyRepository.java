@@ -2,7 +2,12 @@ package com.gateway.repositories;
 
 import com.gateway.models.IdempotencyKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -10,4 +15,16 @@ import java.util.UUID;
 public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
     Optional<IdempotencyKey> findByKeyAndMerchantId(String key, UUID merchantId);
     void deleteByExpiresAtBefore(java.time.LocalDateTime dateTime);
-}
\ No newline at end of file
+
+    // Records the key's response unless the key is already taken. save()
+    // would merge over an existing row; this returns 0 instead, after waiting
+    // for a concurrent insert of the same key to commit or roll back.
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (key, merchant_id, response, created_at, expires_at) " +
+                   "VALUES (:key, :merchantId, CAST(:response AS JSONB), CURRENT_TIMESTAMP, :expiresAt) " +
+                   "ON CONFLICT (key) DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("key") String key, @Param("merchantId") UUID merchantId,
+                       @Param("response") String response, @Param("expiresAt") LocalDateTime expiresAt);
+}
@@ -2,7 +2,12 @@ package com.gateway.repositories;
 
 import com.gateway.models.Payment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.Optional;
 import java.util.List;
 import java.util.UUID;
@@ -13,4 +18,30 @@ public interface PaymentRepository extends JpaRepository<Payment, String> {
     List<Payment> findByOrderId(String orderId);
     List<Payment> findByMerchantId(UUID merchantId);
     List<Payment> findByStatus(String status);
+
+    // Compare-and-set claim: moves a pending payment to processing under
+    // claimToken, or takes over one whose previous worker went quiet for
+    // claimTimeoutSeconds. Staleness is measured against the database clock
+    // that wrote updated_at. Returns 0 when another worker holds or has
+    // finished the payment.
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE payments SET status = 'processing', claim_token = :claimToken, updated_at = CURRENT_TIMESTAMP " +
+                   "WHERE id = :id AND (status = 'pending' OR (status = 'processing' " +
+                   "AND updated_at < CURRENT_TIMESTAMP - make_interval(secs => :claimTimeoutSeconds)))",
+           nativeQuery = true)
+    int claimForProcessing(@Param("id") String id, @Param("claimToken") String claimToken,
+                           @Param("claimTimeoutSeconds") double claimTimeoutSeconds);
+
+    // Records the outcome only if the payment is still processing under this
+    // worker's claim, so a worker whose claim was taken over cannot finalize
+    // it too; the payment is finalized (and its webhook sent) exactly once
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE payments SET status = :status, error_code = :errorCode, error_description = :errorDescription, " +
+                   "claim_token = NULL, updated_at = CURRENT_TIMESTAMP " +
+                   "WHERE id = :id AND status = 'processing' AND claim_token = :claimToken",
+           nativeQuery = true)
+    int completeProcessing(@Param("id") String id, @Param("claimToken") String claimToken, @Param("status") String status,
+                           @Param("errorCode") String errorCode, @Param("errorDescription") String errorDescription);
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.gateway.repositories;
+
+import com.gateway.models.WebhookEndpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface WebhookEndpointRepository extends JpaRepository<WebhookEndpoint, UUID> {
+    List<WebhookEndpoint> findByMerchantIdOrderByCreatedAt(UUID merchantId);
+    Optional<WebhookEndpoint> findByIdAndMerchantId(UUID id, UUID merchantId);
+}
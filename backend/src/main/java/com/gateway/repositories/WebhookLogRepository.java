@@ -2,8 +2,12 @@ package com.gateway.repositories;
 
 import com.gateway.models.WebhookLog;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -12,9 +16,46 @@ public interface WebhookLogRepository extends JpaRepository<WebhookLog, UUID> {
     List<WebhookLog> findByMerchantId(UUID merchantId);
     List<WebhookLog> findByStatus(String status);
     
-    @Query("SELECT w FROM WebhookLog w WHERE w.nextRetryAt < CURRENT_TIMESTAMP AND w.status = 'pending'")
-    List<WebhookLog> findPendingRetries();
-    
     @Query("SELECT w FROM WebhookLog w WHERE w.merchantId = :merchantId ORDER BY w.createdAt DESC")
     List<WebhookLog> findByMerchantIdOrderByCreatedAtDesc(@Param("merchantId") UUID merchantId);
+    
+    @Query("SELECT w FROM WebhookLog w WHERE w.batchId = :batchId ORDER BY w.createdAt")
+    List<WebhookLog> findByBatchId(@Param("batchId") UUID batchId);
+    
+    // Takes the retry of an event by pushing next_retry_at out to the lease
+    // expiry. Matches only while the row still waits for this attempt and no
+    // one else holds a lease on it; returns 0 when the retry is not ours.
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE webhook_logs SET next_retry_at = :leaseUntil " +
+                   "WHERE id = :id AND status = 'pending' AND attempts = :attempts " +
+                   "AND (next_retry_at IS NULL OR next_retry_at <= :dueBy)",
+           nativeQuery = true)
+    int claimRetry(@Param("id") UUID id, @Param("attempts") int attempts, @Param("dueBy") LocalDateTime dueBy,
+                   @Param("leaseUntil") LocalDateTime leaseUntil);
+    
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE webhook_logs SET next_retry_at = :leaseUntil " +
+                   "WHERE batch_id = :batchId AND status = 'pending' AND attempts = :attempts " +
+                   "AND (next_retry_at IS NULL OR next_retry_at <= :dueBy)",
+           nativeQuery = true)
+    int claimBatchRetry(@Param("batchId") UUID batchId, @Param("attempts") int attempts,
+                        @Param("dueBy") LocalDateTime dueBy, @Param("leaseUntil") LocalDateTime leaseUntil);
+    
+    // Gives a claimed retry back, due again at retryAt
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE webhook_logs SET next_retry_at = :retryAt " +
+                   "WHERE id = :id AND status = 'pending' AND attempts = :attempts",
+           nativeQuery = true)
+    int releaseRetry(@Param("id") UUID id, @Param("attempts") int attempts, @Param("retryAt") LocalDateTime retryAt);
+    
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE webhook_logs SET next_retry_at = :retryAt " +
+                   "WHERE batch_id = :batchId AND status = 'pending' AND attempts = :attempts",
+           nativeQuery = true)
+    int releaseBatchRetry(@Param("batchId") UUID batchId, @Param("attempts") int attempts,
+                          @Param("retryAt") LocalDateTime retryAt);
 }
\ No newline at end of file
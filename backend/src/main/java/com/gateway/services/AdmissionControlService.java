@@ -0,0 +1,161 @@
+package com.gateway.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sheds payment creation when the payment queue falls behind, so a spike is
+// refused up front instead of turning into a backlog that delays every pending
+// payment. The queue's depth and oldest-job age, plus the payment jobs still
+// waiting in the job outbox, are sampled at most every
+// ADMISSION_SAMPLE_INTERVAL ms. Past the hard limits every new payment is
+// refused; past the shed depth only merchants already holding more than their
+// budget of queued payments are, so quiet merchants keep getting through.
+// Per-merchant depth is only reported by the fair list backend; on any other
+// backend merchant budgets cannot be enforced, which is logged once, and only
+// the hard limits apply.
+@Service
+public class AdmissionControlService {
+
+    private static final String QUEUE = "payment_queue";
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private JobOutboxService jobOutboxService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ADMISSION_CONTROL_ENABLED:true}")
+    private boolean enabled;
+
+    // Queued payments beyond which every new payment is refused
+    @Value("${ADMISSION_MAX_QUEUE_DEPTH:20000}")
+    private long maxQueueDepth;
+
+    // Age in ms of the oldest queued payment beyond which every new payment is refused
+    @Value("${ADMISSION_MAX_QUEUE_LAG:120000}")
+    private long maxQueueLag;
+
+    // Queued payments beyond which merchants over their budget are refused
+    @Value("${ADMISSION_SHED_QUEUE_DEPTH:5000}")
+    private long shedQueueDepth;
+
+    // Queued payments a merchant may hold while shedding
+    @Value("${ADMISSION_MERCHANT_BUDGET:1000}")
+    private long merchantBudget;
+
+    // merchantId=budget pairs, comma separated, overriding ADMISSION_MERCHANT_BUDGET
+    @Value("${ADMISSION_MERCHANT_BUDGETS:}")
+    private String merchantBudgetOverrides;
+
+    @Value("${ADMISSION_RETRY_AFTER:5}")
+    private long retryAfterSeconds;
+
+    @Value("${ADMISSION_SAMPLE_INTERVAL:500}")
+    private long sampleInterval;
+
+    private final Map<String, Long> budgets = new HashMap<>();
+
+    private final AtomicLong sampledAt = new AtomicLong();
+
+    private final AtomicBoolean budgetsUnenforceableLogged = new AtomicBoolean();
+
+    private volatile QueueSample sample = new QueueSample(0, 0, Collections.emptyMap());
+
+    private static class QueueSample {
+        final long depth;
+        final long lagMillis;
+        final Map<?, ?> merchantDepths;
+
+        QueueSample(long depth, long lagMillis, Map<?, ?> merchantDepths) {
+            this.depth = depth;
+            this.lagMillis = lagMillis;
+            this.merchantDepths = merchantDepths;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String entry : merchantBudgetOverrides.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                budgets.put(parts[0].trim(), Long.parseLong(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid admission budget: " + entry);
+            }
+        }
+    }
+
+    // Throws AdmissionRejectedException when the merchant's payment must be refused
+    public void admitPayment(UUID merchantId) {
+        if (!enabled) {
+            return;
+        }
+        QueueSample current = currentSample();
+
+        if (current.depth >= maxQueueDepth) {
+            reject("queue_depth", "Payment queue is full, retry later");
+        }
+        if (current.lagMillis >= maxQueueLag) {
+            reject("queue_lag", "Payment processing is delayed, retry later");
+        }
+        if (current.depth >= shedQueueDepth) {
+            Object merchantDepth = current.merchantDepths.get(merchantId.toString());
+            long queued = merchantDepth instanceof Number ? ((Number) merchantDepth).longValue() : 0;
+            if (queued >= budgets.getOrDefault(merchantId.toString(), merchantBudget)) {
+                reject("merchant_budget", "Too many payments queued for this merchant, retry later");
+            }
+        }
+    }
+
+    private void reject(String reason, String message) {
+        meterRegistry.counter("gateway.admission.rejected", "reason", reason).increment();
+        throw new AdmissionRejectedException(message, retryAfterSeconds);
+    }
+
+    // One request per interval refreshes the sample; the rest use the last one.
+    // If the queue cannot be read the previous sample stays, failing open.
+    private QueueSample currentSample() {
+        long now = System.currentTimeMillis();
+        long last = sampledAt.get();
+        if (now - last < sampleInterval || !sampledAt.compareAndSet(last, now)) {
+            return sample;
+        }
+        try {
+            Map<String, Object> stats = jobQueueService.getQueueStats(QUEUE);
+            Map<String, Object> outbox = jobOutboxService.getBacklog(QUEUE);
+            Object merchantDepths = stats.get("merchant_lengths");
+            if (!(merchantDepths instanceof Map) && budgetsUnenforceableLogged.compareAndSet(false, true)) {
+                System.err.println("Admission control: " + QUEUE + " on the " + stats.get("backend")
+                    + " backend reports no per-merchant depth (only the fair list backend does); "
+                    + "merchant budgets are not enforced");
+            }
+            sample = new QueueSample(
+                asLong(stats.get("length")) + asLong(outbox.get("length")),
+                Math.max(asLong(stats.get("oldest_age_ms")), asLong(outbox.get("oldest_age_ms"))),
+                merchantDepths instanceof Map ? (Map<?, ?>) merchantDepths : Collections.emptyMap());
+        } catch (Exception e) {
+            System.err.println("Error sampling " + QUEUE + " for admission control: " + e.getMessage());
+        }
+        return sample;
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.gateway.services;
+
+// Thrown when admission control refuses new work; controllers answer 429 with
+// the suggested Retry-After
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,46 @@
+package com.gateway.services;
+
+import org.springframework.http.HttpStatus;
+
+// A request error that already knows its HTTP status and API error code, so
+// controllers no longer have to classify exceptions by message text
+public class ApiException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    private final String code;
+
+    public ApiException(HttpStatus status, String code, String message) {
+        super(message);
+        this.status = status;
+        this.code = code;
+    }
+
+    public static ApiException authentication() {
+        return new ApiException(HttpStatus.UNAUTHORIZED, "AUTHENTICATION_ERROR", "Invalid API credentials");
+    }
+
+    public static ApiException badRequest(String message) {
+        return new ApiException(HttpStatus.BAD_REQUEST, "BAD_REQUEST_ERROR", message);
+    }
+
+    public static ApiException notFound(String message) {
+        return new ApiException(HttpStatus.NOT_FOUND, "NOT_FOUND_ERROR", message);
+    }
+
+    public static ApiException invalidVpa(String message) {
+        return new ApiException(HttpStatus.BAD_REQUEST, "INVALID_VPA", message);
+    }
+
+    public static ApiException invalidCard(String message) {
+        return new ApiException(HttpStatus.BAD_REQUEST, "INVALID_CARD", message);
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,184 @@
+package com.gateway.services;
+
+import com.gateway.models.IdempotencyKey;
+import com.gateway.repositories.IdempotencyKeyRepository;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+// Redis tier in front of the idempotency_keys table. The first request with a
+// key claims it with SET NX and an in-flight marker that expires after
+// IDEMPOTENCY_LOCK_TTL ms, so a crashed node cannot hold a key forever.
+// Duplicates arriving while it runs poll until the response is stored, then
+// return it. Stored responses expire through Redis's own TTL. The table is
+// still written in the payment's transaction and stays the durable copy: a
+// claim that finds no response in Redis checks it before going ahead, and
+// if Redis is unavailable requests fall back to the table alone.
+@Service
+public class IdempotencyService {
+
+    private static final String KEY_PREFIX = "idempotency:";
+
+    private static final String IN_FLIGHT = "in_flight:";
+
+    private static final String DONE = "done:";
+
+    // Stores the response unless another request has claimed the key since
+    // this one's marker expired
+    private static final String COMPLETE_SCRIPT =
+        "local current = redis.call('get', KEYS[1]) " +
+        "if current == false or current == ARGV[1] then " +
+        "redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1 end " +
+        "return 0";
+
+    private static final String RELEASE_SCRIPT =
+        "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end " +
+        "return 0";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    // How long a stored response is replayed
+    @Value("${IDEMPOTENCY_TTL:86400000}")
+    private long ttl;
+
+    // How long an in-flight claim holds the key if its request never finishes
+    @Value("${IDEMPOTENCY_LOCK_TTL:30000}")
+    private long lockTtl;
+
+    // How long a duplicate waits for the first request before giving up
+    @Value("${IDEMPOTENCY_WAIT_TIMEOUT:10000}")
+    private long waitTimeout;
+
+    @Value("${IDEMPOTENCY_POLL_INTERVAL:50}")
+    private long pollInterval;
+
+    // Outcome of claiming a key: either a stored response to replay, or
+    // permission to process the request and record its response
+    public static class Claim {
+        private final String redisKey;
+        private final String marker;
+        private final String response;
+
+        Claim(String redisKey, String marker, String response) {
+            this.redisKey = redisKey;
+            this.marker = marker;
+            this.response = response;
+        }
+
+        // Response JSON of the request that first used the key, if any
+        public String getResponse() {
+            return response;
+        }
+    }
+
+    public Claim claim(UUID merchantId, String key) {
+        String redisKey = KEY_PREFIX + merchantId + ":" + key;
+        String marker = IN_FLIGHT + UUID.randomUUID();
+        long deadline = System.currentTimeMillis() + waitTimeout;
+        try {
+            RBucket<String> bucket = redissonClient.getBucket(redisKey, StringCodec.INSTANCE);
+            while (true) {
+                if (bucket.setIfAbsent(marker, Duration.ofMillis(lockTtl))) {
+                    // Redis had nothing, but the response may outlive it in Postgres
+                    IdempotencyKey stored = findStored(merchantId, key);
+                    if (stored != null) {
+                        long remaining = Duration.between(LocalDateTime.now(), stored.getExpiresAt()).toMillis();
+                        store(redisKey, marker, stored.getResponse(), Math.max(1, remaining));
+                        return new Claim(redisKey, null, stored.getResponse());
+                    }
+                    return new Claim(redisKey, marker, null);
+                }
+
+                String current = bucket.get();
+                if (current != null && current.startsWith(DONE)) {
+                    return new Claim(redisKey, null, current.substring(DONE.length()));
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    throw inProgress();
+                }
+                // Still in flight, or released by a failed request and free to claim
+                Thread.sleep(Math.max(1, pollInterval));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw inProgress();
+        } catch (ApiException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Idempotency store unavailable, using database only: " + e.getMessage());
+            IdempotencyKey stored = findStored(merchantId, key);
+            return new Claim(null, null, stored == null ? null : stored.getResponse());
+        }
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    private static ApiException inProgress() {
+        return new ApiException(HttpStatus.CONFLICT, "IDEMPOTENCY_CONFLICT",
+            "A request with this Idempotency-Key is still being processed");
+    }
+
+    // Records the response for duplicates once the request's work has committed
+    public void complete(Claim claim, String response) {
+        if (claim.redisKey == null || claim.marker == null) {
+            return;
+        }
+        store(claim.redisKey, claim.marker, response, ttl);
+    }
+
+    private void store(String redisKey, String marker, String response, long ttlMillis) {
+        try {
+            redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, COMPLETE_SCRIPT,
+                RScript.ReturnType.INTEGER, Collections.singletonList(redisKey),
+                marker, DONE + response, String.valueOf(ttlMillis));
+        } catch (Exception e) {
+            // Duplicates find the response in Postgres instead
+            System.err.println("Error storing idempotent response: " + e.getMessage());
+        }
+    }
+
+    // Frees the key after the request failed, so a retry can run it again
+    public void release(Claim claim) {
+        if (claim.redisKey == null || claim.marker == null) {
+            return;
+        }
+        try {
+            redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, RELEASE_SCRIPT,
+                RScript.ReturnType.INTEGER, Collections.singletonList(claim.redisKey), claim.marker);
+        } catch (Exception e) {
+            // The marker expires on its own
+            System.err.println("Error releasing idempotency key: " + e.getMessage());
+        }
+    }
+
+    // The durable copy of the key's response; expired rows are removed
+    public IdempotencyKey findStored(UUID merchantId, String key) {
+        Optional<IdempotencyKey> existingKeyOpt = idempotencyKeyRepository.findByKeyAndMerchantId(key, merchantId);
+        if (!existingKeyOpt.isPresent()) {
+            return null;
+        }
+        IdempotencyKey existingKey = existingKeyOpt.get();
+        if (LocalDateTime.now().isAfter(existingKey.getExpiresAt())) {
+            idempotencyKeyRepository.delete(existingKey);
+            return null;
+        }
+        return existingKey;
+    }
+}
@@ -0,0 +1,162 @@
+package com.gateway.services;
+
+import com.gateway.jobs.Job;
+import com.gateway.utils.MpmcRingBuffer;
+import com.gateway.utils.WaitStrategy;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// In-process queue backend for deployments where the API and the workers share
+// one JVM (dev, small installs, benchmarks). Each queue is a bounded lock-free
+// ring buffer, so enqueue/dequeue never leave the process. Jobs are not durable:
+// anything still queued is lost when the JVM stops.
+@Service
+@ConditionalOnProperty(name = "JOB_QUEUE_BACKEND", havingValue = "memory")
+public class InMemoryJobQueueService implements JobQueueService {
+
+    @Value("${MEMORY_QUEUE_CAPACITY:65536}")
+    private int capacity;
+
+    // blocking, sleeping or busy-spin
+    @Value("${MEMORY_QUEUE_WAIT_STRATEGY:blocking}")
+    private String waitStrategyName;
+
+    private final Map<String, QueueState> queues = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor delayTimer;
+
+    private static class QueueState {
+        final MpmcRingBuffer<Job> buffer;
+        final WaitStrategy waitStrategy;
+
+        QueueState(int capacity, WaitStrategy waitStrategy) {
+            this.buffer = new MpmcRingBuffer<>(capacity);
+            this.waitStrategy = waitStrategy;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        delayTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "memory-queue-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        delayTimer.setRemoveOnCancelPolicy(true);
+        System.out.println("Using in-memory job queues (capacity " + capacity + ", wait strategy " + waitStrategyName + ")");
+    }
+
+    private QueueState getQueue(String queueName) {
+        return queues.computeIfAbsent(queueName, name -> new QueueState(capacity, WaitStrategy.forName(waitStrategyName)));
+    }
+
+    @Override
+    public void enqueueJob(String queueName, Job job) {
+        job.setEnqueuedAt(System.currentTimeMillis());
+        QueueState queue = getQueue(queueName);
+        int attempt = 0;
+        // A full buffer applies backpressure to the producer
+        while (!queue.buffer.offer(job)) {
+            try {
+                queue.waitStrategy.await(attempt++, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while enqueuing to " + queueName, e);
+            }
+        }
+        queue.waitStrategy.signalAll();
+    }
+
+    @Override
+    public void enqueueJobs(String queueName, Collection<? extends Job> jobs) {
+        for (Job job : jobs) {
+            enqueueJob(queueName, job);
+        }
+    }
+
+    @Override
+    public void enqueueJobWithDelay(String queueName, Job job, long delay, TimeUnit timeUnit) {
+        delayTimer.schedule(() -> enqueueJob(queueName, job), delay, timeUnit);
+    }
+
+    @Override
+    public Job dequeueJob(String queueName) throws InterruptedException {
+        Job job;
+        do {
+            job = dequeueJob(queueName, 1, TimeUnit.SECONDS);
+        } while (job == null);
+        return job;
+    }
+
+    @Override
+    public Job dequeueJob(String queueName, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        QueueState queue = getQueue(queueName);
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        int attempt = 0;
+        while (true) {
+            Job job = queue.buffer.poll();
+            if (job != null) {
+                queue.waitStrategy.signalAll();
+                return job;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            queue.waitStrategy.await(attempt++, deadline);
+        }
+    }
+
+    @Override
+    public List<Job> dequeueBatch(String queueName, int max, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        List<Job> jobs = new ArrayList<>(max);
+        Job first = dequeueJob(queueName, timeout, timeUnit);
+        if (first == null) {
+            return jobs;
+        }
+        jobs.add(first);
+
+        QueueState queue = getQueue(queueName);
+        while (jobs.size() < max) {
+            Job job = queue.buffer.poll();
+            if (job == null) {
+                break;
+            }
+            jobs.add(job);
+        }
+        if (jobs.size() > 1) {
+            queue.waitStrategy.signalAll();
+        }
+        return jobs;
+    }
+
+    @Override
+    public Map<String, Object> getQueueStats(String queueName) {
+        QueueState queue = getQueue(queueName);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "memory");
+        stats.put("length", queue.buffer.size());
+        stats.put("capacity", queue.buffer.capacity());
+        Job head = queue.buffer.peek();
+        stats.put("oldest_age_ms", head == null || head.getEnqueuedAt() == 0
+            ? 0 : Math.max(0, System.currentTimeMillis() - head.getEnqueuedAt()));
+        stats.put("delayed_all_queues", delayTimer.getQueue().size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        delayTimer.shutdownNow();
+    }
+}
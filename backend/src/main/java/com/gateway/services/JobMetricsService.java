@@ -0,0 +1,295 @@
+package com.gateway.services;
+
+import com.gateway.jobs.Job;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Job throughput and outcome metrics. Workers count jobs in local Micrometer
+// meters (scraped from each worker's /actuator/prometheus) and flush the same
+// counts to Redis once a second, so the API can report cluster-wide totals,
+// in-flight counts and rolling jobs/sec on /test/jobs/status. The API exports
+// queue depth and oldest-job age as gauges.
+@Service
+public class JobMetricsService {
+
+    public static final List<String> QUEUES = List.of("payment_queue", "refund_queue", "webhook_queue");
+
+    private static final String KEY_PREFIX = "job_metrics:";
+
+    private static final String COMPLETED = "completed";
+
+    private static final String FAILED = "failed";
+
+    // A worker that has not reported for this long is considered gone
+    private static final long INSTANCE_STALE_MILLIS = 10000;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private Environment environment;
+
+    // Seconds of per-second buckets averaged into jobs_per_sec
+    @Value("${JOB_METRICS_RATE_WINDOW:60}")
+    private int rateWindow;
+
+    @Value("${HOSTNAME:local}")
+    private String instanceName;
+
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    // Counts not yet flushed to Redis, keyed by queue then hash field
+    private final Map<String, Map<String, LongAdder>> unflushed = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (environment.acceptsProfiles(Profiles.of("worker"))) {
+            return;
+        }
+        for (String queueName : QUEUES) {
+            Gauge.builder("gateway.queue.length", this, metrics -> metrics.queueStat(queueName, "length"))
+                .tag("queue", queueName)
+                .register(meterRegistry);
+            Gauge.builder("gateway.queue.oldest.age", this, metrics -> metrics.queueStat(queueName, "oldest_age_ms") / 1000.0)
+                .tag("queue", queueName)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        }
+    }
+
+    private double queueStat(String queueName, String stat) {
+        Object value = jobQueueService.getQueueStats(queueName).get(stat);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    public void jobsStarted(String queueName, int count) {
+        inFlight(queueName).addAndGet(count);
+    }
+
+    public void jobsCompleted(String queueName, List<Job> jobs, long durationNanos) {
+        jobsFinished(queueName, jobs, COMPLETED, durationNanos);
+    }
+
+    // The handler threw; declined payments are completed jobs, not failed ones
+    public void jobsFailed(String queueName, List<Job> jobs, long durationNanos) {
+        jobsFinished(queueName, jobs, FAILED, durationNanos);
+    }
+
+    // Jobs handed back unfinished (worker interrupted) count as neither outcome
+    public void jobsAbandoned(String queueName, int count) {
+        inFlight(queueName).addAndGet(-count);
+    }
+
+    private void jobsFinished(String queueName, List<Job> jobs, String outcome, long durationNanos) {
+        inFlight(queueName).addAndGet(-jobs.size());
+        Timer.builder("gateway.jobs.duration")
+            .tag("queue", queueName)
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+
+        Map<String, LongAdder> counts = unflushed.computeIfAbsent(queueName, name -> new ConcurrentHashMap<>());
+        for (Job job : jobs) {
+            String type = job.getClass().getSimpleName();
+            Counter.builder("gateway.jobs." + outcome)
+                .tag("queue", queueName)
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment();
+            counts.computeIfAbsent(outcome, field -> new LongAdder()).increment();
+            counts.computeIfAbsent(outcome + ":" + type, field -> new LongAdder()).increment();
+        }
+    }
+
+    private AtomicInteger inFlight(String queueName) {
+        return inFlight.computeIfAbsent(queueName, name -> {
+            AtomicInteger gauge = new AtomicInteger();
+            Gauge.builder("gateway.jobs.in.flight", gauge, AtomicInteger::get)
+                .tag("queue", name)
+                .register(meterRegistry);
+            return gauge;
+        });
+    }
+
+    // Pushes counts gathered since the last flush into the cluster-wide
+    // totals and the current second's rate bucket, and refreshes this
+    // instance's in-flight report. Only processes that ran jobs report.
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long second = now / 1000;
+        RBatch batch = redissonClient.createBatch();
+        for (Map.Entry<String, Map<String, LongAdder>> queue : unflushed.entrySet()) {
+            RMapAsync<String, String> totals = batch.getMap(KEY_PREFIX + queue.getKey(), StringCodec.INSTANCE);
+            RMapAsync<String, String> bucket = batch.getMap(rateKey(queue.getKey(), second), StringCodec.INSTANCE);
+            boolean counted = false;
+            for (Map.Entry<String, LongAdder> field : queue.getValue().entrySet()) {
+                long delta = field.getValue().sumThenReset();
+                if (delta == 0) {
+                    continue;
+                }
+                totals.addAndGetAsync(field.getKey(), delta);
+                bucket.addAndGetAsync(field.getKey(), delta);
+                counted = true;
+            }
+            if (counted) {
+                bucket.expireAsync(Duration.ofSeconds(rateWindow + 10L));
+            }
+        }
+        for (Map.Entry<String, AtomicInteger> queue : inFlight.entrySet()) {
+            batch.<String, String>getMap(KEY_PREFIX + queue.getKey() + ":in_flight", StringCodec.INSTANCE)
+                .fastPutAsync(instanceName, queue.getValue().get() + ":" + now);
+        }
+        try {
+            batch.execute();
+        } catch (Exception e) {
+            System.err.println("Error flushing job metrics: " + e.getMessage());
+        }
+    }
+
+    private static String rateKey(String queueName, long second) {
+        return KEY_PREFIX + queueName + ":rate:" + second;
+    }
+
+    // Cluster-wide view of every queue for the job status endpoint
+    public Map<String, Object> getStatus() {
+        long now = System.currentTimeMillis();
+        long currentSecond = now / 1000;
+
+        // One round trip for totals, in-flight reports and the rate window
+        RBatch batch = redissonClient.createBatch();
+        Map<String, RFuture<Map<String, String>>> totals = new LinkedHashMap<>();
+        Map<String, RFuture<Map<String, String>>> inFlightReports = new LinkedHashMap<>();
+        Map<String, List<RFuture<Map<String, String>>>> buckets = new LinkedHashMap<>();
+        for (String queueName : QUEUES) {
+            totals.put(queueName, batch.<String, String>getMap(KEY_PREFIX + queueName, StringCodec.INSTANCE).readAllMapAsync());
+            inFlightReports.put(queueName,
+                batch.<String, String>getMap(KEY_PREFIX + queueName + ":in_flight", StringCodec.INSTANCE).readAllMapAsync());
+            List<RFuture<Map<String, String>>> window = new ArrayList<>(rateWindow);
+            // The current second is still filling up, so the window ends before it
+            for (long second = currentSecond - rateWindow; second < currentSecond; second++) {
+                window.add(batch.<String, String>getMap(rateKey(queueName, second), StringCodec.INSTANCE).readAllMapAsync());
+            }
+            buckets.put(queueName, window);
+        }
+        batch.execute();
+
+        Map<String, Object> queues = new LinkedHashMap<>();
+        long pending = 0;
+        long processing = 0;
+        long completed = 0;
+        long failed = 0;
+        boolean workersReporting = false;
+        for (String queueName : QUEUES) {
+            Map<String, Object> queue = new LinkedHashMap<>(jobQueueService.getQueueStats(queueName));
+
+            long queueInFlight = 0;
+            for (String report : inFlightReports.get(queueName).toCompletableFuture().getNow(null).values()) {
+                String[] parts = report.split(":");
+                if (parts.length == 2 && now - Long.parseLong(parts[1]) <= INSTANCE_STALE_MILLIS) {
+                    queueInFlight += Long.parseLong(parts[0]);
+                    workersReporting = true;
+                }
+            }
+
+            Map<String, Long> windowCounts = new LinkedHashMap<>();
+            for (RFuture<Map<String, String>> bucket : buckets.get(queueName)) {
+                for (Map.Entry<String, String> field : bucket.toCompletableFuture().getNow(null).entrySet()) {
+                    windowCounts.merge(field.getKey(), parseCount(field.getValue()), Long::sum);
+                }
+            }
+
+            Map<String, String> queueTotals = totals.get(queueName).toCompletableFuture().getNow(null);
+            long queueCompleted = parseCount(queueTotals.get(COMPLETED));
+            long queueFailed = parseCount(queueTotals.get(FAILED));
+            queue.put("in_flight", queueInFlight);
+            queue.put(COMPLETED, queueCompleted);
+            queue.put(FAILED, queueFailed);
+            queue.put("jobs_per_sec", rate(windowCounts.get(COMPLETED), windowCounts.get(FAILED)));
+
+            Map<String, Object> types = new LinkedHashMap<>();
+            for (String field : queueTotals.keySet()) {
+                if (!field.startsWith(COMPLETED + ":") && !field.startsWith(FAILED + ":")) {
+                    continue;
+                }
+                String type = field.substring(field.indexOf(':') + 1);
+                if (types.containsKey(type)) {
+                    continue;
+                }
+                Map<String, Object> typeStats = new LinkedHashMap<>();
+                typeStats.put(COMPLETED, parseCount(queueTotals.get(COMPLETED + ":" + type)));
+                typeStats.put(FAILED, parseCount(queueTotals.get(FAILED + ":" + type)));
+                typeStats.put("jobs_per_sec", rate(windowCounts.get(COMPLETED + ":" + type), windowCounts.get(FAILED + ":" + type)));
+                types.put(type, typeStats);
+            }
+            queue.put("job_types", types);
+            queues.put(queueName, queue);
+
+            Object length = queue.get("length");
+            pending += length instanceof Number ? ((Number) length).longValue() : 0;
+            processing += queueInFlight;
+            completed += queueCompleted;
+            failed += queueFailed;
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pending", pending);
+        status.put("processing", processing);
+        status.put(COMPLETED, completed);
+        status.put(FAILED, failed);
+        status.put("worker_status", workersReporting ? "running" : "stopped");
+        status.put("rate_window_seconds", rateWindow);
+        status.put("queues", queues);
+        return status;
+    }
+
+    private double rate(Long completed, Long failed) {
+        long jobs = (completed == null ? 0 : completed) + (failed == null ? 0 : failed);
+        return Math.round(jobs * 100.0 / Math.max(1, rateWindow)) / 100.0;
+    }
+
+    // Hash counters are updated with HINCRBYFLOAT, so values may carry a fraction
+    private static long parseCount(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.round(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.gateway.services;
+
+import com.gateway.jobs.Job;
+import com.gateway.jobs.JobCodec;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Transactional outbox for job publication. Request handlers write the job to
+// job_outbox in the same transaction as the payment or refund it refers to, so
+// the request path does one database commit and never waits on Redis. The
+// relay drains the table to the job queues in batches; FOR UPDATE SKIP LOCKED
+// lets every node run it without two relays taking the same rows. A job is
+// deleted only after it was enqueued, so delivery is at-least-once.
+@Service
+public class JobOutboxService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${OUTBOX_RELAY_ENABLED:true}")
+    private boolean relayEnabled;
+
+    // Outbox rows moved to the queues per relay transaction
+    @Value("${OUTBOX_RELAY_BATCH_SIZE:500}")
+    private int batchSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    private static class OutboxEntry {
+        final long id;
+        final String queueName;
+        final byte[] payload;
+
+        OutboxEntry(long id, String queueName, byte[] payload) {
+            this.id = id;
+            this.queueName = queueName;
+            this.payload = payload;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Joins the caller's transaction; the job becomes visible to the relay
+    // only if that transaction commits
+    public void publish(String queueName, Job job) {
+        jdbcTemplate.update("INSERT INTO job_outbox (queue_name, payload) VALUES (?, ?)",
+            queueName, JobCodec.toBytes(job));
+    }
+
+    // Jobs for the queue still waiting in the outbox: "length" and the age in
+    // ms of the oldest, "oldest_age_ms". Published work is not in the queue
+    // until the relay has moved it, so these count toward the queue's backlog.
+    public Map<String, Object> getBacklog(String queueName) {
+        return jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) AS length, " +
+            "COALESCE(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP - MIN(created_at)) * 1000, 0) AS oldest_age_ms " +
+            "FROM job_outbox WHERE queue_name = ?",
+            (rs, rowNum) -> {
+                Map<String, Object> backlog = new LinkedHashMap<>();
+                backlog.put("length", rs.getLong("length"));
+                backlog.put("oldest_age_ms", rs.getLong("oldest_age_ms"));
+                return backlog;
+            },
+            queueName);
+    }
+
+    @Scheduled(fixedDelayString = "${OUTBOX_RELAY_INTERVAL:100}")
+    public void relay() {
+        if (!relayEnabled) {
+            return;
+        }
+        try {
+            // Keep going while batches come back full so a backlog drains at once
+            while (relayBatch() >= batchSize) {
+                // next batch
+            }
+        } catch (Exception e) {
+            System.err.println("Error relaying job outbox: " + e.getMessage());
+        }
+    }
+
+    private int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<OutboxEntry> entries = jdbcTemplate.query(
+                "SELECT id, queue_name, payload FROM job_outbox ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED",
+                (rs, rowNum) -> new OutboxEntry(rs.getLong("id"), rs.getString("queue_name"), rs.getBytes("payload")),
+                batchSize);
+            if (entries.isEmpty()) {
+                return 0;
+            }
+
+            Map<String, List<Job>> jobsByQueue = new LinkedHashMap<>();
+            List<Long> ids = new ArrayList<>(entries.size());
+            for (OutboxEntry entry : entries) {
+                ids.add(entry.id);
+                try {
+                    jobsByQueue.computeIfAbsent(entry.queueName, name -> new ArrayList<>())
+                        .add(JobCodec.fromBytes(entry.payload));
+                } catch (IOException e) {
+                    // Undecodable rows are dropped rather than blocking the outbox
+                    System.err.println("Dropping undecodable outbox entry " + entry.id + ": " + e.getMessage());
+                }
+            }
+
+            // An enqueue failure rolls back and leaves the rows for the next run
+            for (Map.Entry<String, List<Job>> queue : jobsByQueue.entrySet()) {
+                jobQueueService.enqueueJobs(queue.getKey(), queue.getValue());
+            }
+            jdbcTemplate.update("DELETE FROM job_outbox WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+            return entries.size();
+        });
+        return relayed == null ? 0 : relayed;
+    }
+}
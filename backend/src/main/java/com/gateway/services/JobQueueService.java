@@ -1,31 +1,32 @@
 package com.gateway.services;
 
 import com.gateway.jobs.Job;
-import org.redisson.api.RBlockingQueue;
-import org.redisson.api.RDelayedQueue;
-import org.redisson.api.RedissonClient;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
 
-@Service
-public class JobQueueService {
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-    @Autowired
-    private RedissonClient redissonClient;
+// Queue abstraction used by the API and the workers. The backend is selected
+// with JOB_QUEUE_BACKEND.
+public interface JobQueueService {
 
-    public void enqueueJob(String queueName, Job job) {
-        RBlockingQueue<Job> queue = redissonClient.getBlockingQueue(queueName);
-        queue.offer(job);
-    }
+    void enqueueJob(String queueName, Job job);
 
-    public void enqueueJobWithDelay(String queueName, Job job, long delay, java.util.concurrent.TimeUnit timeUnit) {
-        RBlockingQueue<Job> queue = redissonClient.getBlockingQueue(queueName);
-        RDelayedQueue<Job> delayedQueue = redissonClient.getDelayedQueue(queue);
-        delayedQueue.offer(job, delay, timeUnit);
-    }
+    void enqueueJobs(String queueName, Collection<? extends Job> jobs);
+
+    void enqueueJobWithDelay(String queueName, Job job, long delay, TimeUnit timeUnit);
+
+    Job dequeueJob(String queueName) throws InterruptedException;
 
-    public Job dequeueJob(String queueName) throws InterruptedException {
-        RBlockingQueue<Job> queue = redissonClient.getBlockingQueue(queueName);
-        return queue.take();
+    Job dequeueJob(String queueName, long timeout, TimeUnit timeUnit) throws InterruptedException;
+
+    List<Job> dequeueBatch(String queueName, int max, long timeout, TimeUnit timeUnit) throws InterruptedException;
+
+    // Confirms a dequeued job has been handled. Backends without delivery
+    // tracking treat this as a no-op.
+    default void acknowledgeJob(String queueName, Job job) {
     }
+
+    Map<String, Object> getQueueStats(String queueName);
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+package com.gateway.services;
+
+import com.gateway.models.Merchant;
+import com.gateway.repositories.MerchantRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Authenticates API credentials against an in-memory cache keyed by api_key, so
+// the common case costs no database round trip. Presented secrets are checked
+// against a SHA-256 hash of the stored one in constant time; the cached
+// Merchant itself still carries the secret. Entries expire after
+// MERCHANT_AUTH_CACHE_TTL ms and the cache holds at most MERCHANT_AUTH_CACHE_SIZE
+// merchants. A merchant saved on any node is evicted on every node through a
+// Redis topic.
+@Service
+public class MerchantAuthService {
+
+    private static final String INVALIDATION_TOPIC = "merchant_auth_invalidations";
+
+    @Autowired
+    private MerchantRepository merchantRepository;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${MERCHANT_AUTH_CACHE_SIZE:10000}")
+    private int maxSize;
+
+    @Value("${MERCHANT_AUTH_CACHE_TTL:300000}")
+    private long ttl;
+
+    private final Map<String, CachedMerchant> cache = new ConcurrentHashMap<>();
+
+    private RTopic invalidations;
+
+    private int listenerId;
+
+    private static class CachedMerchant {
+        final Merchant merchant;
+        final byte[] secretHash;
+        final long loadedAt;
+
+        CachedMerchant(Merchant merchant, byte[] secretHash, long loadedAt) {
+            this.merchant = merchant;
+            this.secretHash = secretHash;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        invalidations = redissonClient.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE);
+        listenerId = invalidations.addListener(String.class, (channel, merchantId) -> evictLocal(merchantId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        invalidations.removeListener(listenerId);
+    }
+
+    public Optional<Merchant> authenticate(String apiKey, String apiSecret) {
+        if (apiKey == null || apiSecret == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        CachedMerchant cached = cache.get(apiKey);
+        if (cached == null || now - cached.loadedAt >= ttl) {
+            cached = load(apiKey, now);
+            if (cached == null) {
+                return Optional.empty();
+            }
+        }
+        if (!MessageDigest.isEqual(sha256(apiSecret), cached.secretHash)) {
+            return Optional.empty();
+        }
+        return Optional.of(cached.merchant);
+    }
+
+    private CachedMerchant load(String apiKey, long now) {
+        Optional<Merchant> merchantOpt = merchantRepository.findByApiKey(apiKey);
+        if (!merchantOpt.isPresent()) {
+            cache.remove(apiKey);
+            return null;
+        }
+        Merchant merchant = merchantOpt.get();
+        CachedMerchant cached = new CachedMerchant(merchant, sha256(merchant.getApiSecret()), now);
+        if (cache.size() >= maxSize) {
+            evictOldest(now);
+        }
+        cache.put(apiKey, cached);
+        return cached;
+    }
+
+    // Drops expired entries, then the oldest one if the cache is still full
+    private void evictOldest(long now) {
+        cache.values().removeIf(entry -> now - entry.loadedAt >= ttl);
+        if (cache.size() < maxSize) {
+            return;
+        }
+        String oldestKey = null;
+        long oldestLoadedAt = Long.MAX_VALUE;
+        for (Map.Entry<String, CachedMerchant> entry : cache.entrySet()) {
+            if (entry.getValue().loadedAt < oldestLoadedAt) {
+                oldestLoadedAt = entry.getValue().loadedAt;
+                oldestKey = entry.getKey();
+            }
+        }
+        if (oldestKey != null) {
+            cache.remove(oldestKey);
+        }
+    }
+
+    // Evicts the merchant on every node. Keyed by merchant id so a rotated
+    // api_key is dropped as well.
+    public void invalidate(UUID merchantId) {
+        evictLocal(merchantId.toString());
+        try {
+            invalidations.publish(merchantId.toString());
+        } catch (Exception e) {
+            System.err.println("Error publishing merchant cache invalidation: " + e.getMessage());
+        }
+    }
+
+    private void evictLocal(String merchantId) {
+        cache.values().removeIf(entry -> entry.merchant.getId() != null
+            && merchantId.equals(entry.merchant.getId().toString()));
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
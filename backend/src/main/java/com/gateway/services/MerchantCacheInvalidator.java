@@ -0,0 +1,45 @@
+package com.gateway.services;
+
+import com.gateway.models.Merchant;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+
+// JPA listener on Merchant that evicts the merchant from every node's auth
+// cache when it is saved or deleted. The callbacks run at flush, before the
+// change commits, so inside a transaction the eviction waits for the commit;
+// otherwise another node could reload the old row in between and cache it
+// for the whole TTL. The service is looked up lazily because listeners are
+// created while the entity manager factory is still starting.
+public class MerchantCacheInvalidator {
+
+    @Autowired
+    private ObjectProvider<MerchantAuthService> merchantAuthService;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void merchantChanged(Merchant merchant) {
+        MerchantAuthService service = merchantAuthService.getIfAvailable();
+        if (service == null || merchant.getId() == null) {
+            return;
+        }
+        UUID merchantId = merchant.getId();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            service.invalidate(merchantId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                service.invalidate(merchantId);
+            }
+        });
+    }
+}
@@ -50,18 +50,10 @@ public class OrderService {
     @Value("${TEST_PROCESSING_DELAY:1000}")
     private int testProcessingDelay;
 
-    public CreateOrderResponse createOrder(String apiKey, String apiSecret, CreateOrderRequest request) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
-        }
-
-        Merchant merchant = merchantOpt.get();
-
+    public CreateOrderResponse createOrder(Merchant merchant, CreateOrderRequest request) {
         // Validate request
         if (request.getAmount() == null || request.getAmount() < 100) {
-            throw new RuntimeException("amount must be at least 100");
+            throw ApiException.badRequest("amount must be at least 100");
         }
 
         String currency = request.getCurrency() != null ? request.getCurrency() : "INR";
@@ -101,19 +93,11 @@ public class OrderService {
         return response;
     }
 
-    public GetOrderResponse getOrder(String apiKey, String apiSecret, String orderId) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
-        }
-
-        Merchant merchant = merchantOpt.get();
-
+    public GetOrderResponse getOrder(Merchant merchant, String orderId) {
         // Find order by ID and merchant ID
         Optional<Order> orderOpt = orderRepository.findByIdAndMerchantId(orderId, merchant.getId());
         if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
+            throw ApiException.notFound("Order not found");
         }
 
         Order order = orderOpt.get();
@@ -133,15 +117,7 @@ public class OrderService {
         return response;
     }
 
-    public List<GetOrderResponse> getAllOrders(String apiKey, String apiSecret) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
-        }
-
-        Merchant merchant = merchantOpt.get();
-
+    public List<GetOrderResponse> getAllOrders(Merchant merchant) {
         // Find all orders for this merchant
         List<Order> orders = orderRepository.findByMerchantId(merchant.getId());
 
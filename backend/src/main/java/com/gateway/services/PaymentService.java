@@ -5,14 +5,20 @@ import com.gateway.models.*;
 import com.gateway.repositories.*;
 import com.gateway.utils.IdGenerator;
 import com.gateway.jobs.ProcessPaymentJob;
-import com.gateway.services.JobQueueService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
@@ -21,6 +27,8 @@ import java.util.stream.Collectors;
 @Service
 public class PaymentService {
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Autowired
     private PaymentRepository paymentRepository;
 
@@ -34,11 +42,20 @@ public class PaymentService {
     private ValidationService validationService;
 
     @Autowired
-    private JobQueueService jobQueueService;
+    private JobOutboxService jobOutboxService;
 
     @Autowired
     private IdempotencyKeyRepository idempotencyKeyRepository;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AdmissionControlService admissionControlService;
+
     @Value("${TEST_MODE:false}")
     private boolean testMode;
 
@@ -60,49 +77,88 @@ public class PaymentService {
     @Value("${CARD_SUCCESS_RATE:0.95}")
     private double cardSuccessRate;
 
-    public CreatePaymentResponse createPayment(String apiKey, String apiSecret, String idempotencyKey, CreatePaymentRequest request) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // With an idempotency key the key is claimed first, so a concurrent
+    // duplicate waits for this request's response instead of creating a
+    // second payment. The claim is released if the request fails.
+    public CreatePaymentResponse createPayment(Merchant merchant, String idempotencyKey, CreatePaymentRequest request) {
+        if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
+            Order order = validatePayment(merchant, request);
+            // Refuse new work while the payment queue is too far behind
+            admissionControlService.admitPayment(merchant.getId());
+            return transactionTemplate.execute(status -> insertPayment(merchant, order, null, request, new String[1]));
         }
 
-        Merchant merchant = merchantOpt.get();
-        
-        // Handle idempotency key if provided
-        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
-            Optional<IdempotencyKey> existingKeyOpt = idempotencyKeyRepository.findByKeyAndMerchantId(idempotencyKey, merchant.getId());
-            if (existingKeyOpt.isPresent()) {
-                IdempotencyKey existingKey = existingKeyOpt.get();
-                
-                // Check if the key has expired
-                if (LocalDateTime.now().isAfter(existingKey.getExpiresAt())) {
-                    // Delete expired key and continue with normal processing
-                    idempotencyKeyRepository.delete(existingKey);
-                } else {
-                    // Return cached response
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    try {
-                        return objectMapper.readValue(existingKey.getResponse(), CreatePaymentResponse.class);
-                    } catch (Exception e) {
-                        // If deserialization fails, continue with normal processing
-                        System.err.println("Failed to deserialize cached response: " + e.getMessage());
-                    }
-                }
+        IdempotencyService.Claim claim = idempotencyService.claim(merchant.getId(), idempotencyKey);
+        if (claim.getResponse() != null) {
+            // Return cached response
+            CreatePaymentResponse cached = readResponse(claim.getResponse());
+            if (cached != null) {
+                return cached;
             }
         }
 
+        String[] responseJson = new String[1];
+        CreatePaymentResponse response;
+        try {
+            Order order = validatePayment(merchant, request);
+            admissionControlService.admitPayment(merchant.getId());
+            response = transactionTemplate.execute(status ->
+                insertPayment(merchant, order, idempotencyKey, request, responseJson));
+        } catch (DataIntegrityViolationException e) {
+            // A duplicate whose claim lapsed, or that ran while Redis was
+            // down, committed the key first; its payment stands and this one
+            // was rolled back. The durable copy holds its response.
+            idempotencyService.release(claim);
+            IdempotencyKey stored = idempotencyService.findStored(merchant.getId(), idempotencyKey);
+            CreatePaymentResponse existing = stored == null ? null : readResponse(stored.getResponse());
+            if (existing == null) {
+                throw new ApiException(HttpStatus.CONFLICT, "IDEMPOTENCY_CONFLICT",
+                    "This Idempotency-Key has already been used");
+            }
+            return existing;
+        } catch (RuntimeException e) {
+            idempotencyService.release(claim);
+            throw e;
+        }
+
+        if (responseJson[0] != null) {
+            idempotencyService.complete(claim, responseJson[0]);
+        } else {
+            idempotencyService.release(claim);
+        }
+        return response;
+    }
+
+    private CreatePaymentResponse readResponse(String json) {
+        try {
+            return OBJECT_MAPPER.readValue(json, CreatePaymentResponse.class);
+        } catch (Exception e) {
+            // If deserialization fails, continue with normal processing
+            System.err.println("Failed to deserialize cached response: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Checks the request against its order before any transaction is opened
+    private Order validatePayment(Merchant merchant, CreatePaymentRequest request) {
         // Find order by ID
         Optional<Order> orderOpt = orderRepository.findById(request.getOrderId());
         if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
+            throw ApiException.notFound("Order not found");
         }
 
         Order order = orderOpt.get();
 
         // Verify order belongs to the authenticated merchant
         if (!order.getMerchantId().equals(merchant.getId())) {
-            throw new RuntimeException("Order not found");
+            throw ApiException.notFound("Order not found");
         }
 
         // Validate payment method specific fields
@@ -111,9 +167,15 @@ public class PaymentService {
         } else if ("card".equals(request.getMethod())) {
             validateCardPayment(request);
         } else {
-            throw new RuntimeException("Invalid payment method");
+            throw ApiException.badRequest("Invalid payment method");
         }
+        return order;
+    }
 
+    // One transaction for the payment, its job and the idempotency record;
+    // the stored response JSON is handed back through responseJson
+    private CreatePaymentResponse insertPayment(Merchant merchant, Order order, String idempotencyKey,
+                                                CreatePaymentRequest request, String[] responseJson) {
         // Generate payment ID
         String paymentId = IdGenerator.generatePaymentId();
 
@@ -141,9 +203,9 @@ public class PaymentService {
         // Save payment (initially with pending status)
         payment = paymentRepository.save(payment);
 
-        // Enqueue ProcessPaymentJob with payment ID
-        ProcessPaymentJob paymentJob = new ProcessPaymentJob(paymentId);
-        jobQueueService.enqueueJob("payment_queue", paymentJob);
+        // Publish ProcessPaymentJob through the outbox, committed with the payment
+        ProcessPaymentJob paymentJob = new ProcessPaymentJob(paymentId, merchant.getId());
+        jobOutboxService.publish("payment_queue", paymentJob);
 
         // Create response
         CreatePaymentResponse response = new CreatePaymentResponse();
@@ -163,38 +225,30 @@ public class PaymentService {
         }
         
         // If idempotency key was provided, store the response
-        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
-            ObjectMapper objectMapper = new ObjectMapper();
+        if (idempotencyKey != null) {
             try {
-                String responseJson = objectMapper.writeValueAsString(response);
-                IdempotencyKey idempotencyKeyObj = new IdempotencyKey(
-                    idempotencyKey,
-                    merchant.getId(),
-                    responseJson,
-                    LocalDateTime.now().plusDays(1) // Expires in 24 hours
-                );
-                idempotencyKeyRepository.save(idempotencyKeyObj);
+                responseJson[0] = OBJECT_MAPPER.writeValueAsString(response);
             } catch (Exception e) {
                 System.err.println("Failed to serialize response for idempotency: " + e.getMessage());
             }
+            if (responseJson[0] != null) {
+                int inserted = idempotencyKeyRepository.insertIfAbsent(idempotencyKey, merchant.getId(), responseJson[0],
+                    LocalDateTime.now().plus(idempotencyService.getTtl(), ChronoUnit.MILLIS));
+                if (inserted == 0) {
+                    // Rolls this payment back; the caller replays the first one
+                    throw new DuplicateKeyException("Idempotency key already used: " + idempotencyKey);
+                }
+            }
         }
 
         return response;
     }
 
-    public GetPaymentResponse getPayment(String apiKey, String apiSecret, String paymentId) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
-        }
-
-        Merchant merchant = merchantOpt.get();
-
+    public GetPaymentResponse getPayment(Merchant merchant, String paymentId) {
         // Find payment by ID and merchant ID
         Optional<Payment> paymentOpt = paymentRepository.findByIdAndMerchantId(paymentId, merchant.getId());
         if (!paymentOpt.isPresent()) {
-            throw new RuntimeException("Payment not found");
+            throw ApiException.notFound("Payment not found");
         }
 
         Payment payment = paymentOpt.get();
@@ -222,15 +276,7 @@ public class PaymentService {
         return response;
     }
 
-    public List<GetPaymentResponse> getAllPayments(String apiKey, String apiSecret) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
-        }
-
-        Merchant merchant = merchantOpt.get();
-
+    public List<GetPaymentResponse> getAllPayments(Merchant merchant) {
         // Find all payments for this merchant
         List<Payment> payments = paymentRepository.findByMerchantId(merchant.getId());
 
@@ -262,26 +308,18 @@ public class PaymentService {
         return response;
     }
 
-    public CapturePaymentResponse capturePayment(String apiKey, String apiSecret, String paymentId, CapturePaymentRequest request) {
-        // Authenticate merchant
-        Optional<Merchant> merchantOpt = merchantRepository.findByApiKeyAndApiSecret(apiKey, apiSecret);
-        if (!merchantOpt.isPresent()) {
-            throw new RuntimeException("Invalid API credentials");
-        }
-
-        Merchant merchant = merchantOpt.get();
-
+    public CapturePaymentResponse capturePayment(Merchant merchant, String paymentId, CapturePaymentRequest request) {
         // Find payment by ID and merchant ID
         Optional<Payment> paymentOpt = paymentRepository.findByIdAndMerchantId(paymentId, merchant.getId());
         if (!paymentOpt.isPresent()) {
-            throw new RuntimeException("Payment not found");
+            throw ApiException.badRequest("Payment not found");
         }
 
         Payment payment = paymentOpt.get();
 
         // Verify payment is in a capturable state
         if (!"success".equals(payment.getStatus())) {
-            throw new RuntimeException("Payment not in capturable state");
+            throw ApiException.badRequest("Payment not in capturable state");
         }
 
         // Update captured field to true
@@ -312,17 +350,17 @@ public class PaymentService {
 
     private void validateUpiPayment(CreatePaymentRequest request) {
         if (request.getVpa() == null || request.getVpa().trim().isEmpty()) {
-            throw new RuntimeException("VPA is required for UPI payments");
+            throw ApiException.invalidVpa("VPA is required for UPI payments");
         }
 
         if (!validationService.validateVpa(request.getVpa())) {
-            throw new RuntimeException("Invalid VPA format");
+            throw ApiException.invalidVpa("Invalid VPA format");
         }
     }
 
     private void validateCardPayment(CreatePaymentRequest request) {
         if (request.getCard() == null) {
-            throw new RuntimeException("Card details are required for card payments");
+            throw ApiException.invalidCard("Card details are required for card payments");
         }
 
         String number = request.getCard().getNumber();
@@ -332,36 +370,36 @@ public class PaymentService {
         String holderName = request.getCard().getHolderName();
 
         if (number == null || number.trim().isEmpty()) {
-            throw new RuntimeException("Card number is required");
+            throw ApiException.invalidCard("Card number is required");
         }
 
         if (expiryMonth == null || expiryMonth.trim().isEmpty()) {
-            throw new RuntimeException("Expiry month is required");
+            throw ApiException.badRequest("Expiry month is required");
         }
 
         if (expiryYear == null || expiryYear.trim().isEmpty()) {
-            throw new RuntimeException("Expiry year is required");
+            throw ApiException.badRequest("Expiry year is required");
         }
 
         if (cvv == null || cvv.trim().isEmpty()) {
-            throw new RuntimeException("CVV is required");
+            throw ApiException.badRequest("CVV is required");
         }
 
         if (holderName == null || holderName.trim().isEmpty()) {
-            throw new RuntimeException("Card holder name is required");
+            throw ApiException.badRequest("Card holder name is required");
         }
 
         if (!validationService.validateCardNumber(number)) {
-            throw new RuntimeException("Invalid card number");
+            throw ApiException.invalidCard("Invalid card number");
         }
 
         if (!validationService.validateExpiryDate(expiryMonth, expiryYear)) {
-            throw new RuntimeException("Invalid expiry date");
+            throw ApiException.invalidCard("Invalid expiry date");
         }
 
         // Basic CVV validation (3-4 digits)
         if (!cvv.matches("\\d{3,4}")) {
-            throw new RuntimeException("Invalid CVV format");
+            throw ApiException.badRequest("Invalid CVV format");
         }
     }
 
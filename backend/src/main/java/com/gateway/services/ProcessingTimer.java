@@ -0,0 +1,114 @@
+package com.gateway.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Schedules the completion step of simulated payment/refund processing so that
+// worker threads are released immediately instead of sleeping through the delay.
+// The timer thread only fires completions; the database work runs on a small
+// completion pool.
+@Service
+@Profile("worker")
+@DependsOn({"entityManagerFactory", "redissonClient"})
+public class ProcessingTimer {
+
+    @Value("${PROCESSING_COMPLETION_THREADS:8}")
+    private int completionThreads;
+
+    // Upper bound on simulated authorizations waiting on the timer at once
+    @Value("${MAX_IN_FLIGHT_PROCESSING:50000}")
+    private int maxInFlight;
+
+    @Value("${WORKER_SHUTDOWN_TIMEOUT:30000}")
+    private long shutdownTimeout;
+
+    private ScheduledThreadPoolExecutor timer;
+
+    private ExecutorService completionPool;
+
+    private Semaphore inFlightPermits;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "processing-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+
+        AtomicInteger counter = new AtomicInteger();
+        completionPool = Executors.newFixedThreadPool(Math.max(1, completionThreads), runnable ->
+            new Thread(runnable, "processing-completion-" + counter.incrementAndGet()));
+
+        inFlightPermits = new Semaphore(Math.max(1, maxInFlight));
+    }
+
+    // Runs the completion after the given delay. Blocks the caller only when the
+    // in-flight limit is reached, which throttles queue consumption.
+    public void schedule(Runnable completion, long delayMillis) throws InterruptedException {
+        inFlightPermits.acquire();
+        inFlight.incrementAndGet();
+        try {
+            timer.schedule(() -> completionPool.execute(() -> runCompletion(completion)),
+                delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private void runCompletion(Runnable completion) {
+        try {
+            completion.run();
+        } catch (Exception e) {
+            System.err.println("Error completing scheduled processing: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        inFlightPermits.release();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Delayed completions still fire after shutdown, so in-flight payments are
+        // finalized instead of being left in 'processing'
+        timer.shutdown();
+        try {
+            if (!timer.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                System.err.println("Processing timer did not drain " + inFlight.get() + " in-flight jobs");
+                timer.shutdownNow();
+            }
+            completionPool.shutdown();
+            if (!completionPool.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+                completionPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            timer.shutdownNow();
+            completionPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
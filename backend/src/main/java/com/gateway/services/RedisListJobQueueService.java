@@ -0,0 +1,385 @@
+package com.gateway.services;
+
+import com.gateway.jobs.Job;
+import com.gateway.jobs.JobCodec;
+import com.gateway.utils.DeficitRoundRobin;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBlockingQueue;
+import org.redisson.api.RDelayedQueue;
+import org.redisson.api.RFuture;
+import org.redisson.api.RList;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Default queue backend: one Redis list per queue, consumed with blocking pops.
+//
+// Queues listed in FAIR_QUEUES are split into one list per merchant
+// (<queue>:merchant:<id>) plus a set of merchants with queued work
+// (<queue>:merchants). Workers drain the merchant lists by deficit round robin,
+// so a merchant with a deep backlog cannot delay everyone else's jobs. Jobs
+// without a merchant, and delayed jobs, stay on the plain <queue> list, which
+// takes part in the rotation like any merchant.
+@Service
+@ConditionalOnProperty(name = "JOB_QUEUE_BACKEND", havingValue = "list", matchIfMissing = true)
+public class RedisListJobQueueService implements JobQueueService {
+
+    private static final String MERCHANT_SUFFIX = ":merchant:";
+
+    private static final String MERCHANTS_SUFFIX = ":merchants";
+
+    private static final String WAKE_SUFFIX = ":wake";
+
+    // The plain queue list's key in the rotation
+    private static final String SHARED_KEY = "";
+
+    // Drops a merchant from the active set only if its list is still empty, so
+    // a job pushed after the consumer's empty poll keeps the merchant active
+    private static final String REMOVE_IF_EMPTY_SCRIPT =
+        "if redis.call('llen', KEYS[1]) == 0 then " +
+        "return redis.call('srem', KEYS[2], ARGV[1]) " +
+        "end " +
+        "return 0";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    // 'binary' uses the compact JobCodec envelope; 'default' keeps Redisson's codec
+    @Value("${JOB_QUEUE_CODEC:binary}")
+    private String jobQueueCodec;
+
+    // Queues scheduled fairly across merchants; empty disables fair queuing
+    @Value("${FAIR_QUEUES:payment_queue,webhook_queue}")
+    private String fairQueueNames;
+
+    // Jobs a merchant may take per round, multiplied by its weight
+    @Value("${FAIR_QUEUE_QUANTUM:1}")
+    private int fairQueueQuantum;
+
+    // merchantId=weight pairs, comma separated; unlisted merchants weigh 1
+    @Value("${MERCHANT_QUEUE_WEIGHTS:}")
+    private String merchantQueueWeights;
+
+    // How often a worker re-reads the set of merchants with queued work
+    @Value("${FAIR_QUEUE_REFRESH_INTERVAL:1000}")
+    private long fairQueueRefreshInterval;
+
+    private final Set<String> fairQueues = new HashSet<>();
+
+    private final Map<String, Integer> weights = new HashMap<>();
+
+    private final Map<String, FairQueue> fairQueueStates = new ConcurrentHashMap<>();
+
+    private static class FairQueue {
+        final DeficitRoundRobin scheduler;
+        final AtomicLong lastRefreshAt = new AtomicLong();
+
+        FairQueue(DeficitRoundRobin scheduler) {
+            this.scheduler = scheduler;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String entry : merchantQueueWeights.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid merchant queue weight: " + entry);
+            }
+        }
+        for (String name : fairQueueNames.split(",")) {
+            if (!name.isBlank()) {
+                fairQueues.add(name.trim());
+            }
+        }
+        if (!fairQueues.isEmpty()) {
+            System.out.println("Fair queuing across merchants on " + fairQueues + " (" + weights.size() + " weighted merchants)");
+        }
+    }
+
+    private RBlockingQueue<Job> getQueue(String queueName) {
+        if ("default".equalsIgnoreCase(jobQueueCodec)) {
+            return redissonClient.getBlockingQueue(queueName);
+        }
+        return redissonClient.getBlockingQueue(queueName, JobCodec.INSTANCE);
+    }
+
+    private boolean isFair(String queueName) {
+        return fairQueues.contains(queueName);
+    }
+
+    private String routingKey(Job job) {
+        return job.getMerchantId() == null ? SHARED_KEY : job.getMerchantId().toString();
+    }
+
+    private String subQueueName(String queueName, String key) {
+        return SHARED_KEY.equals(key) ? queueName : queueName + MERCHANT_SUFFIX + key;
+    }
+
+    @Override
+    public void enqueueJob(String queueName, Job job) {
+        if (isFair(queueName)) {
+            enqueueJobs(queueName, Collections.singletonList(job));
+            return;
+        }
+        job.setEnqueuedAt(System.currentTimeMillis());
+        RBlockingQueue<Job> queue = getQueue(queueName);
+        queue.offer(job);
+    }
+
+    // Enqueue several jobs in a single round trip
+    @Override
+    public void enqueueJobs(String queueName, java.util.Collection<? extends Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Job job : jobs) {
+            job.setEnqueuedAt(now);
+        }
+        if (!isFair(queueName)) {
+            RBlockingQueue<Job> queue = getQueue(queueName);
+            queue.addAll(jobs);
+            return;
+        }
+
+        Map<String, List<Job>> byMerchant = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            byMerchant.computeIfAbsent(routingKey(job), key -> new ArrayList<>()).add(job);
+        }
+
+        // Push before marking the merchant active, in one pipeline
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Boolean>> activations = new ArrayList<>();
+        for (Map.Entry<String, List<Job>> entry : byMerchant.entrySet()) {
+            String subQueue = subQueueName(queueName, entry.getKey());
+            if ("default".equalsIgnoreCase(jobQueueCodec)) {
+                batch.getBlockingQueue(subQueue).addAllAsync(entry.getValue());
+            } else {
+                batch.getBlockingQueue(subQueue, JobCodec.INSTANCE).addAllAsync(entry.getValue());
+            }
+            if (!SHARED_KEY.equals(entry.getKey())) {
+                activations.add(batch.getSet(queueName + MERCHANTS_SUFFIX, StringCodec.INSTANCE).addAsync(entry.getKey()));
+            }
+        }
+        batch.execute();
+
+        // A newly active merchant wakes an idle worker; one pending token is enough
+        for (RFuture<Boolean> activation : activations) {
+            if (Boolean.TRUE.equals(activation.toCompletableFuture().getNow(null))) {
+                RList<String> wake = redissonClient.getList(queueName + WAKE_SUFFIX, StringCodec.INSTANCE);
+                wake.add("1");
+                wake.trim(-1, -1);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void enqueueJobWithDelay(String queueName, Job job, long delay, java.util.concurrent.TimeUnit timeUnit) {
+        // Counted as queued from the moment it becomes due
+        job.setEnqueuedAt(System.currentTimeMillis() + timeUnit.toMillis(delay));
+        RBlockingQueue<Job> queue = getQueue(queueName);
+        RDelayedQueue<Job> delayedQueue = redissonClient.getDelayedQueue(queue);
+        delayedQueue.offer(job, delay, timeUnit);
+    }
+
+    @Override
+    public Job dequeueJob(String queueName) throws InterruptedException {
+        if (isFair(queueName)) {
+            List<Job> jobs;
+            do {
+                jobs = dequeueFair(queueName, 1, 1, TimeUnit.SECONDS);
+            } while (jobs.isEmpty());
+            return jobs.get(0);
+        }
+        RBlockingQueue<Job> queue = getQueue(queueName);
+        return queue.take();
+    }
+
+    @Override
+    public Job dequeueJob(String queueName, long timeout, java.util.concurrent.TimeUnit timeUnit) throws InterruptedException {
+        if (isFair(queueName)) {
+            List<Job> jobs = dequeueFair(queueName, 1, timeout, timeUnit);
+            return jobs.isEmpty() ? null : jobs.get(0);
+        }
+        RBlockingQueue<Job> queue = getQueue(queueName);
+        return queue.poll(timeout, timeUnit);
+    }
+
+    // Block up to the timeout for the first job, then drain whatever else is
+    // already queued (up to max) in one more round trip
+    @Override
+    public List<Job> dequeueBatch(String queueName, int max, long timeout, java.util.concurrent.TimeUnit timeUnit) throws InterruptedException {
+        if (isFair(queueName)) {
+            return dequeueFair(queueName, max, timeout, timeUnit);
+        }
+        RBlockingQueue<Job> queue = getQueue(queueName);
+        List<Job> jobs = new ArrayList<>(max);
+        Job first = queue.poll(timeout, timeUnit);
+        if (first == null) {
+            return jobs;
+        }
+        jobs.add(first);
+        if (max > 1) {
+            queue.drainTo(jobs, max - 1);
+        }
+        return jobs;
+    }
+
+    private FairQueue getFairQueue(String queueName) {
+        return fairQueueStates.computeIfAbsent(queueName, name ->
+            new FairQueue(new DeficitRoundRobin(fairQueueQuantum, key -> weights.getOrDefault(key, 1))));
+    }
+
+    private List<Job> dequeueFair(String queueName, int max, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        FairQueue fair = getFairQueue(queueName);
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        while (true) {
+            long now = System.currentTimeMillis();
+            long lastRefresh = fair.lastRefreshAt.get();
+            if (now - lastRefresh >= fairQueueRefreshInterval && fair.lastRefreshAt.compareAndSet(lastRefresh, now)) {
+                refreshActive(queueName, fair);
+            }
+            List<Job> jobs = pollFair(queueName, fair, max);
+            if (!jobs.isEmpty()) {
+                return jobs;
+            }
+
+            // Every known merchant ran dry; pick up merchants activated since
+            // the last refresh before going idle
+            fair.lastRefreshAt.set(System.currentTimeMillis());
+            refreshActive(queueName, fair);
+            jobs = pollFair(queueName, fair, max);
+            if (!jobs.isEmpty()) {
+                return jobs;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return jobs;
+            }
+            RBlockingQueue<String> wake = redissonClient.getBlockingQueue(queueName + WAKE_SUFFIX, StringCodec.INSTANCE);
+            wake.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(fairQueueRefreshInterval)), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void refreshActive(String queueName, FairQueue fair) {
+        Set<String> keys = new HashSet<>(redissonClient.<String>getSet(queueName + MERCHANTS_SUFFIX, StringCodec.INSTANCE).readAll());
+        keys.add(SHARED_KEY);
+        fair.scheduler.refresh(keys);
+    }
+
+    // Takes grants from the scheduler until max jobs are collected or every
+    // active merchant has run dry
+    private List<Job> pollFair(String queueName, FairQueue fair, int max) {
+        List<Job> jobs = new ArrayList<>(max);
+        while (jobs.size() < max) {
+            DeficitRoundRobin.Grant grant = fair.scheduler.next(max - jobs.size());
+            if (grant == null) {
+                break;
+            }
+            RBlockingQueue<Job> queue = getQueue(subQueueName(queueName, grant.getKey()));
+            int taken;
+            if (grant.getCount() == 1) {
+                Job job = queue.poll();
+                taken = job == null ? 0 : 1;
+                if (job != null) {
+                    jobs.add(job);
+                }
+            } else {
+                taken = queue.drainTo(jobs, grant.getCount());
+            }
+            fair.scheduler.complete(grant, taken);
+            if (taken < grant.getCount() && !SHARED_KEY.equals(grant.getKey())) {
+                removeIfEmpty(queueName, grant.getKey());
+            }
+        }
+        return jobs;
+    }
+
+    private RFuture<Object> peekAsync(RBatch batch, String queueName) {
+        if ("default".equalsIgnoreCase(jobQueueCodec)) {
+            return batch.getBlockingQueue(queueName).peekAsync();
+        }
+        return batch.getBlockingQueue(queueName, JobCodec.INSTANCE).peekAsync();
+    }
+
+    // Age of the job at the head of a list; 0 when empty or not stamped
+    private static long ageOf(Object head) {
+        if (!(head instanceof Job) || ((Job) head).getEnqueuedAt() == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - ((Job) head).getEnqueuedAt());
+    }
+
+    private void removeIfEmpty(String queueName, String merchantKey) {
+        redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, REMOVE_IF_EMPTY_SCRIPT,
+            RScript.ReturnType.INTEGER,
+            List.of(subQueueName(queueName, merchantKey), queueName + MERCHANTS_SUFFIX), merchantKey);
+    }
+
+    @Override
+    public Map<String, Object> getQueueStats(String queueName) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "list");
+        if (!isFair(queueName)) {
+            RBlockingQueue<Job> queue = getQueue(queueName);
+            stats.put("length", queue.size());
+            stats.put("oldest_age_ms", ageOf(queue.peek()));
+            return stats;
+        }
+
+        Set<String> merchants = redissonClient.<String>getSet(queueName + MERCHANTS_SUFFIX, StringCodec.INSTANCE).readAll();
+        RBatch batch = redissonClient.createBatch();
+        RFuture<Integer> shared = batch.getList(queueName, StringCodec.INSTANCE).sizeAsync();
+        List<RFuture<Object>> heads = new ArrayList<>();
+        heads.add(peekAsync(batch, queueName));
+        Map<String, RFuture<Integer>> merchantSizes = new LinkedHashMap<>();
+        for (String merchant : merchants) {
+            merchantSizes.put(merchant, batch.getList(subQueueName(queueName, merchant), StringCodec.INSTANCE).sizeAsync());
+            heads.add(peekAsync(batch, subQueueName(queueName, merchant)));
+        }
+        batch.execute();
+
+        long length = shared.toCompletableFuture().getNow(null);
+        Map<String, Integer> merchantLengths = new LinkedHashMap<>();
+        for (Map.Entry<String, RFuture<Integer>> entry : merchantSizes.entrySet()) {
+            int merchantLength = entry.getValue().toCompletableFuture().getNow(null);
+            merchantLengths.put(entry.getKey(), merchantLength);
+            length += merchantLength;
+        }
+        long oldestAge = 0;
+        for (RFuture<Object> head : heads) {
+            oldestAge = Math.max(oldestAge, ageOf(head.toCompletableFuture().getNow(null)));
+        }
+        stats.put("length", length);
+        stats.put("oldest_age_ms", oldestAge);
+        stats.put("fair", true);
+        stats.put("active_merchants", merchants.size());
+        stats.put("merchant_lengths", merchantLengths);
+        return stats;
+    }
+}
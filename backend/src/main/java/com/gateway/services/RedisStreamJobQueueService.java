@@ -0,0 +1,418 @@
+package com.gateway.services;
+
+import com.gateway.jobs.Job;
+import com.gateway.jobs.JobCodec;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.AutoClaimResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBlockingDeque;
+import org.redisson.api.RScript;
+import org.redisson.api.RStream;
+import org.redisson.api.RStreamAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamConsumer;
+import org.redisson.api.StreamGroup;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.queue.DequeMoveArgs;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Redis Streams queue backend. Every queue is a stream with one consumer group
+// shared by all worker containers. Entries stay pending until the worker
+// acknowledges them, so a job held by a crashed worker is reclaimed by another
+// consumer once it has been idle longer than the visibility timeout. Each
+// reclaim pass claims up to STREAM_CLAIM_COUNT entries at a time and keeps
+// going while pages come back full, so a crashed worker's backlog is
+// recovered in one pass rather than a batch per claim interval; claimed
+// entries beyond what the current dequeue takes are handed out first by the
+// following ones. An entry that waited in that local backlog may have gone
+// idle long enough for another consumer to reclaim it, so each one is
+// re-claimed with XCLAIM JUSTID just before it is handed out and skipped if
+// someone else has touched it since.
+@Service
+@ConditionalOnProperty(name = "JOB_QUEUE_BACKEND", havingValue = "stream")
+public class RedisStreamJobQueueService implements JobQueueService {
+
+    private static final String JOB_FIELD = "job";
+
+    private static final String DELAYED_SUFFIX = ":delayed";
+
+    // Due delayed jobs are moved here before they are added to the stream
+    private static final String TRANSFER_SUFFIX = ":delayed:transfer";
+
+    // XAUTOCLAIM cursor that starts a scan, and that a finished scan returns
+    private static final StreamMessageId SCAN_START = new StreamMessageId(0, 0);
+
+    // Moves up to ARGV[2] jobs from the transfer list onto the stream, each
+    // popped and added in the same step so none is lost or added twice
+    private static final String TRANSFER_SCRIPT =
+        "local moved = 0 " +
+        "while moved < tonumber(ARGV[2]) do " +
+        "local job = redis.call('lpop', KEYS[1]) " +
+        "if not job then break end " +
+        "redis.call('xadd', KEYS[2], '*', ARGV[1], job) " +
+        "moved = moved + 1 " +
+        "end " +
+        "return moved";
+
+    private static final int TRANSFER_BATCH = 100;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${JOB_QUEUE_CODEC:binary}")
+    private String jobQueueCodec;
+
+    @Value("${STREAM_CONSUMER_GROUP:workers}")
+    private String consumerGroup;
+
+    // Consumer name identifies this worker container in XPENDING / XINFO output
+    @Value("${STREAM_CONSUMER_NAME:${HOSTNAME:worker}}")
+    private String consumerName;
+
+    // Entries idle longer than this are considered abandoned and reclaimed
+    @Value("${STREAM_VISIBILITY_TIMEOUT:60000}")
+    private long visibilityTimeout;
+
+    // How often each queue checks for abandoned entries
+    @Value("${STREAM_CLAIM_INTERVAL:5000}")
+    private long claimInterval;
+
+    // Entries claimed per XAUTOCLAIM call
+    @Value("${STREAM_CLAIM_COUNT:100}")
+    private int claimCount;
+
+    private final Set<String> initializedGroups = ConcurrentHashMap.newKeySet();
+
+    // Dequeued jobs awaiting acknowledgement. Job classes keep identity
+    // equality, so each dequeued instance maps to exactly one stream entry.
+    private final Map<Job, StreamMessageId> pendingIds = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicLong> lastClaimAt = new ConcurrentHashMap<>();
+
+    private final Map<String, StreamMessageId> claimCursors = new ConcurrentHashMap<>();
+
+    // Reclaimed entries not yet handed to a consumer, per queue
+    private final Map<String, Queue<Reclaimed>> reclaimed = new ConcurrentHashMap<>();
+
+    private static class Reclaimed {
+        final StreamMessageId id;
+        final Job job;
+        final long claimedAt;
+
+        Reclaimed(StreamMessageId id, Job job, long claimedAt) {
+            this.id = id;
+            this.job = job;
+            this.claimedAt = claimedAt;
+        }
+    }
+
+    private final Map<String, Thread> delayedTransfers = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    private Codec jobCodec() {
+        if ("default".equalsIgnoreCase(jobQueueCodec)) {
+            return redissonClient.getConfig().getCodec();
+        }
+        return JobCodec.INSTANCE;
+    }
+
+    private RStream<String, Job> getStream(String queueName) {
+        Codec codec = jobCodec();
+        return redissonClient.getStream(queueName, new CompositeCodec(StringCodec.INSTANCE, codec, codec));
+    }
+
+    private void ensureGroup(String queueName, RStream<String, Job> stream) {
+        if (initializedGroups.contains(queueName)) {
+            return;
+        }
+        try {
+            stream.createGroup(StreamCreateGroupArgs.name(consumerGroup).id(StreamMessageId.ALL).makeStream());
+        } catch (RedisException e) {
+            // BUSYGROUP: already created by another worker
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        initializedGroups.add(queueName);
+    }
+
+    @Override
+    public void enqueueJob(String queueName, Job job) {
+        job.setEnqueuedAt(System.currentTimeMillis());
+        getStream(queueName).add(StreamAddArgs.entry(JOB_FIELD, job));
+    }
+
+    @Override
+    public void enqueueJobs(String queueName, Collection<? extends Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Codec codec = jobCodec();
+        RBatch batch = redissonClient.createBatch();
+        RStreamAsync<String, Job> stream = batch.getStream(queueName, new CompositeCodec(StringCodec.INSTANCE, codec, codec));
+        for (Job job : jobs) {
+            job.setEnqueuedAt(now);
+            stream.addAsync(StreamAddArgs.entry(JOB_FIELD, job));
+        }
+        batch.execute();
+    }
+
+    // Streams have no native delay, so delayed jobs wait in a Redisson delayed
+    // queue and are moved onto the stream by a transfer thread once due. The
+    // job counts as enqueued from the moment it is due.
+    @Override
+    public void enqueueJobWithDelay(String queueName, Job job, long delay, TimeUnit timeUnit) {
+        job.setEnqueuedAt(System.currentTimeMillis() + timeUnit.toMillis(delay));
+        redissonClient.getDelayedQueue(getDelayedList(queueName)).offer(job, delay, timeUnit);
+    }
+
+    private RBlockingDeque<Job> getDelayedList(String queueName) {
+        return redissonClient.getBlockingDeque(queueName + DELAYED_SUFFIX, jobCodec());
+    }
+
+    private void ensureDelayedTransfer(String queueName) {
+        delayedTransfers.computeIfAbsent(queueName, name -> {
+            RBlockingDeque<Job> delayedList = getDelayedList(name);
+            // Keeps Redisson's delayed-queue timer running in this process
+            redissonClient.getDelayedQueue(delayedList);
+            Thread thread = new Thread(() -> transferDelayed(name, delayedList), name + "-delayed-transfer");
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        });
+    }
+
+    // Due jobs are moved to a transfer list with a blocking BLMOVE, then onto
+    // the stream by a script. A job left in the transfer list by a crash is
+    // picked up by the next pass of any worker, since every pass drains the
+    // whole list.
+    private void transferDelayed(String queueName, RBlockingDeque<Job> delayedList) {
+        String transferList = queueName + TRANSFER_SUFFIX;
+        while (running) {
+            try {
+                while (drainTransfer(queueName, transferList) >= TRANSFER_BATCH) {
+                    // next batch
+                }
+                delayedList.move(Duration.ofSeconds(1), DequeMoveArgs.pollFirst().addLastTo(transferList));
+                if (Thread.interrupted()) {
+                    return;
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Error transferring delayed jobs for " + queueName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private long drainTransfer(String queueName, String transferList) {
+        Long moved = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, TRANSFER_SCRIPT,
+            RScript.ReturnType.INTEGER, Arrays.asList(transferList, queueName),
+            JOB_FIELD, String.valueOf(TRANSFER_BATCH));
+        return moved == null ? 0 : moved;
+    }
+
+    @Override
+    public Job dequeueJob(String queueName) throws InterruptedException {
+        while (true) {
+            List<Job> jobs = dequeueBatch(queueName, 1, 1, TimeUnit.SECONDS);
+            if (!jobs.isEmpty()) {
+                return jobs.get(0);
+            }
+        }
+    }
+
+    @Override
+    public Job dequeueJob(String queueName, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        List<Job> jobs = dequeueBatch(queueName, 1, timeout, timeUnit);
+        return jobs.isEmpty() ? null : jobs.get(0);
+    }
+
+    @Override
+    public List<Job> dequeueBatch(String queueName, int max, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        RStream<String, Job> stream = getStream(queueName);
+        ensureGroup(queueName, stream);
+        ensureDelayedTransfer(queueName);
+
+        // Abandoned entries take priority over new ones
+        List<Job> reclaimed = reclaimAbandoned(queueName, stream, max);
+        if (!reclaimed.isEmpty()) {
+            return reclaimed;
+        }
+
+        Map<StreamMessageId, Map<String, Job>> messages = stream.readGroup(consumerGroup, consumerName,
+            StreamReadGroupArgs.neverDelivered().count(max).timeout(Duration.ofMillis(Math.max(1, timeUnit.toMillis(timeout)))));
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (messages == null || messages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return track(queueName, stream, messages);
+    }
+
+    private List<Job> reclaimAbandoned(String queueName, RStream<String, Job> stream, int max) {
+        Queue<Reclaimed> backlog = reclaimed.computeIfAbsent(queueName, name -> new ConcurrentLinkedQueue<>());
+        List<Job> jobs = takeReclaimed(queueName, stream, backlog, max);
+        if (!jobs.isEmpty()) {
+            return jobs;
+        }
+
+        AtomicLong last = lastClaimAt.computeIfAbsent(queueName, name -> new AtomicLong());
+        long now = System.currentTimeMillis();
+        long previous = last.get();
+        // A pass runs once per claim interval, and continues on the next
+        // dequeue while the previous page came back full. Only one consumer
+        // thread per queue runs the claim at a time.
+        StreamMessageId cursor = claimCursors.getOrDefault(queueName, SCAN_START);
+        boolean midPass = !SCAN_START.equals(cursor);
+        if ((!midPass && now - previous < claimInterval) || !last.compareAndSet(previous, now)) {
+            return jobs;
+        }
+
+        int count = Math.max(max, claimCount);
+        AutoClaimResult<String, Job> result = stream.autoClaim(consumerGroup, consumerName,
+            visibilityTimeout, TimeUnit.MILLISECONDS, cursor, count);
+        // A short page means the scan is done even if the cursor says otherwise
+        claimCursors.put(queueName, result.getMessages().size() < count ? SCAN_START : result.getNextId());
+
+        if (!result.getMessages().isEmpty()) {
+            System.out.println("Reclaimed " + result.getMessages().size() + " abandoned entries on " + queueName);
+        }
+        long claimedAt = System.currentTimeMillis();
+        for (Map.Entry<StreamMessageId, Map<String, Job>> entry : result.getMessages().entrySet()) {
+            Job job = readable(queueName, stream, entry);
+            if (job != null) {
+                backlog.add(new Reclaimed(entry.getKey(), job, claimedAt));
+            }
+        }
+        return takeReclaimed(queueName, stream, backlog, max);
+    }
+
+    // XCLAIM only succeeds on an entry idle for at least the time since we
+    // claimed it, which holds exactly when no other consumer has claimed (or
+    // acknowledged) it in the meantime; it also resets the idle time, so the
+    // job gets a full visibility timeout from the moment it is handed out.
+    private List<Job> takeReclaimed(String queueName, RStream<String, Job> stream, Queue<Reclaimed> backlog, int max) {
+        List<Job> jobs = new ArrayList<>();
+        Reclaimed entry;
+        while (jobs.size() < max && (entry = backlog.poll()) != null) {
+            long held = System.currentTimeMillis() - entry.claimedAt;
+            if (stream.fastClaim(consumerGroup, consumerName, held, TimeUnit.MILLISECONDS, entry.id).isEmpty()) {
+                System.out.println("Skipping entry " + entry.id + " on " + queueName + ", reclaimed by another consumer");
+                continue;
+            }
+            pendingIds.put(entry.job, entry.id);
+            jobs.add(entry.job);
+        }
+        return jobs;
+    }
+
+    private List<Job> track(String queueName, RStream<String, Job> stream, Map<StreamMessageId, Map<String, Job>> messages) {
+        List<Job> jobs = new ArrayList<>(messages.size());
+        for (Map.Entry<StreamMessageId, Map<String, Job>> entry : messages.entrySet()) {
+            Job job = readable(queueName, stream, entry);
+            if (job != null) {
+                pendingIds.put(job, entry.getKey());
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    private Job readable(String queueName, RStream<String, Job> stream, Map.Entry<StreamMessageId, Map<String, Job>> entry) {
+        Job job = entry.getValue().get(JOB_FIELD);
+        if (job == null) {
+            // Undecodable or trimmed entry; drop it so it is not reclaimed forever
+            System.err.println("Dropping unreadable entry " + entry.getKey() + " on " + queueName);
+            stream.ack(consumerGroup, entry.getKey());
+            stream.remove(entry.getKey());
+        }
+        return job;
+    }
+
+    // XACK and XDEL in one round trip so acknowledged entries do not accumulate
+    @Override
+    public void acknowledgeJob(String queueName, Job job) {
+        StreamMessageId id = pendingIds.remove(job);
+        if (id == null) {
+            return;
+        }
+        Codec codec = jobCodec();
+        RBatch batch = redissonClient.createBatch();
+        RStreamAsync<String, Job> stream = batch.getStream(queueName, new CompositeCodec(StringCodec.INSTANCE, codec, codec));
+        stream.ackAsync(consumerGroup, id);
+        stream.removeAsync(id);
+        batch.execute();
+    }
+
+    @Override
+    public Map<String, Object> getQueueStats(String queueName) {
+        RStream<String, Job> stream = getStream(queueName);
+        ensureGroup(queueName, stream);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", "stream");
+        stats.put("length", stream.size());
+        // Acknowledged entries are deleted, so the first entry is the oldest
+        // job not yet handled; its id carries the time it was added
+        Map<StreamMessageId, Map<String, Job>> first = stream.range(1, StreamMessageId.MIN, StreamMessageId.MAX);
+        long oldestAge = 0;
+        for (StreamMessageId id : first.keySet()) {
+            oldestAge = Math.max(0, System.currentTimeMillis() - id.getId0());
+        }
+        stats.put("oldest_age_ms", oldestAge);
+        for (StreamGroup group : stream.listGroups()) {
+            if (!consumerGroup.equals(group.getName())) {
+                continue;
+            }
+            stats.put("group", group.getName());
+            stats.put("pending", group.getPending());
+            stats.put("lag", group.getLag());
+            stats.put("consumers", group.getConsumers());
+        }
+
+        Map<String, Object> consumers = new LinkedHashMap<>();
+        for (StreamConsumer consumer : stream.listConsumers(consumerGroup)) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("pending", consumer.getPending());
+            info.put("idle_ms", consumer.getIdleTime());
+            consumers.put(consumer.getName(), info);
+        }
+        stats.put("consumer_pending", consumers);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        delayedTransfers.values().forEach(Thread::interrupt);
+    }
+}
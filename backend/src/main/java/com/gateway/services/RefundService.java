@@ -0,0 +1,80 @@
+package com.gateway.services;
+
+import com.gateway.jobs.ProcessRefundJob;
+import com.gateway.models.Merchant;
+import com.gateway.models.Payment;
+import com.gateway.models.Refund;
+import com.gateway.repositories.PaymentRepository;
+import com.gateway.repositories.RefundRepository;
+import com.gateway.utils.IdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class RefundService {
+
+    @Autowired
+    private RefundRepository refundRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private JobOutboxService jobOutboxService;
+
+    // The refund row and its ProcessRefundJob commit together
+    @Transactional
+    public Refund createRefund(Merchant merchant, String paymentId, Integer amount, String reason) {
+        // Look up payment by paymentId; another merchant's payment is reported as missing
+        Optional<Payment> paymentOpt = paymentRepository.findById(paymentId);
+        if (!paymentOpt.isPresent() || !paymentOpt.get().getMerchantId().equals(merchant.getId())) {
+            throw ApiException.notFound("Payment not found");
+        }
+
+        Payment payment = paymentOpt.get();
+
+        // Verify payment is refundable
+        if (!"success".equals(payment.getStatus())) {
+            throw ApiException.badRequest("Payment not in refundable state");
+        }
+
+        // Calculate total already refunded
+        List<Refund> existingRefunds = refundRepository.findByPaymentId(paymentId);
+        int totalRefundedAmount = existingRefunds.stream()
+                .filter(r -> "processed".equals(r.getStatus()) || "pending".equals(r.getStatus()))
+                .mapToInt(Refund::getAmount)
+                .sum();
+
+        // Validate refund amount
+        if (amount == null || amount <= 0) {
+            throw ApiException.badRequest("Amount is required and must be positive");
+        }
+
+        if (amount > (payment.getAmount() - totalRefundedAmount)) {
+            throw ApiException.badRequest("Refund amount exceeds available amount");
+        }
+
+        // Generate refund ID
+        String refundId = IdGenerator.generateRefundId();
+
+        // Create refund record in database
+        Refund refund = new Refund();
+        refund.setId(refundId);
+        refund.setPaymentId(paymentId);
+        refund.setMerchantId(merchant.getId());
+        refund.setAmount(amount);
+        refund.setReason(reason);
+        refund.setStatus("pending");
+
+        refund = refundRepository.save(refund);
+
+        // Publish ProcessRefundJob through the outbox
+        jobOutboxService.publish("refund_queue", new ProcessRefundJob(refundId));
+
+        return refund;
+    }
+}
\ No newline at end of file
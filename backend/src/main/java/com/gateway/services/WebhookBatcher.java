@@ -0,0 +1,224 @@
+package com.gateway.services;
+
+import com.gateway.jobs.DeliverWebhookBatchJob;
+import com.gateway.jobs.DeliverWebhookJob;
+import com.gateway.repositories.WebhookLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Opt-in batched webhook delivery. For merchants listed in
+// WEBHOOK_BATCH_MERCHANTS, first-attempt events are held for up to
+// WEBHOOK_BATCH_WINDOW ms (or until WEBHOOK_BATCH_MAX_EVENTS are waiting) and
+// then delivered as one signed JSON array, so a busy merchant receives one
+// request per batch instead of one per event. Merchants with several
+// endpoints get a batch per endpoint. Each event still gets its own
+// webhook_logs row, tagged with the batch id, and retries re-send the batch.
+// The row is written when the event joins its batch, before its queue entry
+// is acknowledged, and starts out leased past the batch window; a batch that
+// never goes out (crash, deploy, failed send) is picked up by the retry
+// sweeper once that lease lapses.
+@Service
+@Profile("worker")
+public class WebhookBatcher {
+
+    private static final String INSERT_EVENT =
+        "INSERT INTO webhook_logs (id, merchant_id, endpoint_id, event, payload, status, attempts, next_retry_at, " +
+        "batch_id, created_at) " +
+        "VALUES (?, ?, ?, ?, CAST(convert_from(?, 'UTF8') AS JSONB), 'pending', 0, ?, ?, CURRENT_TIMESTAMP)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WebhookLogRepository webhookLogRepository;
+
+    @Autowired
+    private WebhookLogWriter webhookLogWriter;
+
+    @Autowired
+    private WebhookEndpointIndex webhookEndpointIndex;
+
+    @Autowired
+    private WebhookRetryScheduler webhookRetryScheduler;
+
+    @Autowired
+    private WebhookHttpClient webhookHttpClient;
+
+    @Autowired
+    private WebhookDispatcher webhookDispatcher;
+
+    @Autowired
+    private WebhookCircuitBreaker webhookCircuitBreaker;
+
+    // Comma-separated merchant ids that receive batched webhooks
+    @Value("${WEBHOOK_BATCH_MERCHANTS:}")
+    private String batchMerchantIds;
+
+    @Value("${WEBHOOK_BATCH_MAX_EVENTS:100}")
+    private int maxEvents;
+
+    // Longest an event waits for its batch to fill
+    @Value("${WEBHOOK_BATCH_WINDOW:250}")
+    private long window;
+
+    @Value("${WEBHOOK_ASYNC_DELIVERY:true}")
+    private boolean asyncDelivery;
+
+    private final Set<UUID> batchMerchants = new HashSet<>();
+
+    // Open batch per endpoint (the merchant id for its own webhook_url),
+    // guarded by this; removed when flushed
+    private final Map<UUID, Batch> buffers = new HashMap<>();
+
+    // Events joined to a batch, guarded by the batch itself. A closed batch
+    // takes no more events.
+    private static class Batch {
+        final UUID id = UUID.randomUUID();
+        final List<DeliverWebhookJob> jobs = new ArrayList<>();
+        boolean closed;
+    }
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        for (String entry : batchMerchantIds.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                batchMerchants.add(UUID.fromString(entry.trim()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring invalid webhook batch merchant: " + entry);
+            }
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "webhook-batcher"));
+    }
+
+    // Takes the job into its endpoint's open batch. Returns false when the job
+    // should be delivered on its own: the merchant is not batched, or the job
+    // is a retry of an event that already has a log row.
+    public boolean offer(DeliverWebhookJob job) {
+        if (!batchMerchants.contains(job.getMerchantId()) || job.getWebhookLogId() != null || job.getAttempt() != 1) {
+            return false;
+        }
+
+        UUID key = job.getEndpointId() != null ? job.getEndpointId() : job.getMerchantId();
+        while (true) {
+            Batch batch;
+            synchronized (this) {
+                batch = buffers.get(key);
+                if (batch == null) {
+                    Batch opened = new Batch();
+                    batch = opened;
+                    buffers.put(key, opened);
+                    flusher.schedule(() -> flush(key, opened), Math.max(1, window), TimeUnit.MILLISECONDS);
+                }
+            }
+            boolean full;
+            synchronized (batch) {
+                if (batch.closed) {
+                    // Flushed while we were getting here; join the next one
+                    continue;
+                }
+                try {
+                    insertRow(batch, job);
+                } catch (Exception e) {
+                    System.err.println("Error recording batched webhook for merchant " + job.getMerchantId()
+                        + ", delivering it on its own: " + e.getMessage());
+                    return false;
+                }
+                batch.jobs.add(job);
+                full = batch.jobs.size() >= Math.max(1, maxEvents);
+            }
+            if (full) {
+                flush(key, batch);
+            }
+            return true;
+        }
+    }
+
+    // The row is leased until well after the batch is due to go out
+    private void insertRow(Batch batch, DeliverWebhookJob job) {
+        Timestamp leaseUntil = Timestamp.valueOf(
+            LocalDateTime.now().plus(window + webhookRetryScheduler.getLease(), ChronoUnit.MILLIS));
+        jdbcTemplate.update(INSERT_EVENT, UUID.randomUUID(), job.getMerchantId(), job.getEndpointId(),
+            job.getEventType(), job.getPayload(), leaseUntil, batch.id);
+    }
+
+    private void flush(UUID key, Batch batch) {
+        synchronized (this) {
+            buffers.remove(key, batch);
+        }
+        List<DeliverWebhookJob> jobs;
+        synchronized (batch) {
+            if (batch.closed) {
+                return;
+            }
+            batch.closed = true;
+            jobs = batch.jobs;
+        }
+        if (!jobs.isEmpty()) {
+            deliver(batch.id, jobs);
+        }
+    }
+
+    // Delivers a batch whose rows are already written
+    private void deliver(UUID batchId, List<DeliverWebhookJob> jobs) {
+        UUID merchantId = jobs.get(0).getMerchantId();
+        UUID endpointId = jobs.get(0).getEndpointId();
+        try {
+            List<byte[]> payloads = new ArrayList<>(jobs.size());
+            for (DeliverWebhookJob job : jobs) {
+                payloads.add(job.getPayload());
+            }
+
+            DeliverWebhookBatchJob batchJob = new DeliverWebhookBatchJob(merchantId, batchId, payloads, endpointId);
+            batchJob.setDependencies(webhookLogRepository, webhookLogWriter, webhookEndpointIndex,
+                webhookRetryScheduler, webhookHttpClient, webhookCircuitBreaker);
+            if (asyncDelivery) {
+                batchJob.executeAsync(webhookDispatcher);
+            } else {
+                batchJob.execute();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // The rows stay pending under their lease, so the sweeper retries the batch
+            System.err.println("Error delivering webhook batch for merchant " + merchantId + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Deliver whatever is still buffered before the dispatcher drains
+        flusher.shutdownNow();
+        Map<UUID, Batch> open;
+        synchronized (this) {
+            open = new HashMap<>(buffers);
+        }
+        for (Map.Entry<UUID, Batch> entry : open.entrySet()) {
+            flush(entry.getKey(), entry.getValue());
+        }
+    }
+}
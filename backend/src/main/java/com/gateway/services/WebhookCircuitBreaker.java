@@ -0,0 +1,379 @@
+package com.gateway.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Circuit breaker for webhook endpoints, one per endpoint (keyed by endpoint
+// id, or merchant id for a merchant's own webhook_url). Workers track each
+// endpoint's recent deliveries in a rolling window; once enough of them fail
+// or are slow the circuit opens and deliveries are parked until it
+// half-opens, without an HTTP attempt and without using up one of their
+// attempts, so a dead endpoint stops tying up connections and worker time.
+// After WEBHOOK_CIRCUIT_OPEN_DURATION the circuit goes half-open and lets a
+// few probe deliveries through: a successful probe closes it, a failed one
+// opens it again. Each worker keeps its own breakers and publishes state
+// changes to Redis, where the API reads them. Published state carries an
+// expiry, so state left behind by a worker that died is read as closed.
+// Closed circuits with nothing recorded inside the window are dropped by a
+// periodic sweep, so deleted endpoints and merchants that stop receiving
+// events do not each keep a circuit for the life of the worker.
+@Service
+public class WebhookCircuitBreaker {
+
+    public static final String CLOSED = "closed";
+
+    public static final String OPEN = "open";
+
+    public static final String HALF_OPEN = "half_open";
+
+    private static final String STATE_KEY = "webhook_circuits";
+
+    // Buckets the rolling window is divided into
+    private static final int BUCKETS = 10;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${WEBHOOK_CIRCUIT_ENABLED:true}")
+    private boolean enabled;
+
+    // Length of the rolling window outcomes are counted over
+    @Value("${WEBHOOK_CIRCUIT_WINDOW:30000}")
+    private long window;
+
+    // Deliveries the window must hold before the circuit can open
+    @Value("${WEBHOOK_CIRCUIT_MIN_CALLS:10}")
+    private int minCalls;
+
+    @Value("${WEBHOOK_CIRCUIT_FAILURE_RATE:0.5}")
+    private double failureRateThreshold;
+
+    // Deliveries taking longer than this count as slow
+    @Value("${WEBHOOK_CIRCUIT_SLOW_CALL:2000}")
+    private long slowCallThreshold;
+
+    @Value("${WEBHOOK_CIRCUIT_SLOW_CALL_RATE:0.8}")
+    private double slowCallRateThreshold;
+
+    @Value("${WEBHOOK_CIRCUIT_OPEN_DURATION:30000}")
+    private long openDuration;
+
+    // Probe deliveries allowed at once while half-open
+    @Value("${WEBHOOK_CIRCUIT_PROBES:1}")
+    private int maxProbes;
+
+    // How long published state outlives the open window before it is
+    // treated as stale
+    @Value("${WEBHOOK_CIRCUIT_STATE_TTL:60000}")
+    private long stateTtl;
+
+    private final Map<UUID, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private Counter parked;
+
+    private final class Circuit {
+        final long[] bucketStart = new long[BUCKETS];
+        final int[] calls = new int[BUCKETS];
+        final int[] failures = new int[BUCKETS];
+        final int[] slowCalls = new int[BUCKETS];
+        String state = CLOSED;
+        long openedAt;
+        int probes;
+        // Set when the sweep drops the circuit; a record() that got hold of
+        // it before then starts over with a fresh one
+        boolean evicted;
+
+        int bucket(long now) {
+            long width = Math.max(1, window / BUCKETS);
+            long start = now - now % width;
+            int index = (int) ((now / width) % BUCKETS);
+            if (bucketStart[index] != start) {
+                bucketStart[index] = start;
+                calls[index] = 0;
+                failures[index] = 0;
+                slowCalls[index] = 0;
+            }
+            return index;
+        }
+
+        // Totals over buckets still inside the window: calls, failures, slow calls
+        int[] totals(long now) {
+            int[] totals = new int[3];
+            for (int i = 0; i < BUCKETS; i++) {
+                if (now - bucketStart[i] < window) {
+                    totals[0] += calls[i];
+                    totals[1] += failures[i];
+                    totals[2] += slowCalls[i];
+                }
+            }
+            return totals;
+        }
+
+        // Closed with no outcome recorded inside the window
+        boolean idle(long now) {
+            if (!CLOSED.equals(state)) {
+                return false;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                if (now - bucketStart[i] < window) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketStart[i] = 0;
+                calls[i] = 0;
+                failures[i] = 0;
+                slowCalls[i] = 0;
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        parked = Counter.builder("gateway.webhook.circuit.parked").register(meterRegistry);
+        Gauge.builder("gateway.webhook.circuit.open", circuits,
+                map -> map.values().stream().filter(circuit -> !CLOSED.equals(circuit.state)).count())
+            .register(meterRegistry);
+    }
+
+    // Whether a delivery to the endpoint may go out now. In half-open state a
+    // true result takes a probe slot, which the matching record() or
+    // cancel() gives back.
+    public boolean allowRequest(UUID key) {
+        if (!enabled) {
+            return true;
+        }
+        Circuit circuit = circuits.get(key);
+        if (circuit == null) {
+            return true;
+        }
+        synchronized (circuit) {
+            long now = System.currentTimeMillis();
+            if (OPEN.equals(circuit.state)) {
+                if (now - circuit.openedAt < openDuration) {
+                    parked.increment();
+                    return false;
+                }
+                transition(key, circuit, HALF_OPEN, now, null);
+            }
+            if (HALF_OPEN.equals(circuit.state)) {
+                if (circuit.probes >= Math.max(1, maxProbes)) {
+                    parked.increment();
+                    return false;
+                }
+                circuit.probes++;
+            }
+            return true;
+        }
+    }
+
+    // Records the outcome of a delivery that allowRequest() let through
+    public void record(UUID key, boolean success, long elapsedNanos) {
+        if (!enabled) {
+            return;
+        }
+        boolean slow = TimeUnit.NANOSECONDS.toMillis(elapsedNanos) > slowCallThreshold;
+        while (true) {
+            Circuit circuit = circuits.computeIfAbsent(key, k -> new Circuit());
+            synchronized (circuit) {
+                if (!circuit.evicted) {
+                    record(key, circuit, success, slow, System.currentTimeMillis());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void record(UUID key, Circuit circuit, boolean success, boolean slow, long now) {
+        if (HALF_OPEN.equals(circuit.state)) {
+            circuit.probes = Math.max(0, circuit.probes - 1);
+            if (success && !slow) {
+                circuit.reset();
+                transition(key, circuit, CLOSED, now, null);
+            } else {
+                transition(key, circuit, OPEN, now, success ? "slow probe" : "failed probe");
+            }
+            return;
+        }
+        if (OPEN.equals(circuit.state)) {
+            // A delivery that started before the circuit opened
+            return;
+        }
+
+        int index = circuit.bucket(now);
+        circuit.calls[index]++;
+        if (!success) {
+            circuit.failures[index]++;
+        }
+        if (slow) {
+            circuit.slowCalls[index]++;
+        }
+
+        int[] totals = circuit.totals(now);
+        if (totals[0] < Math.max(1, minCalls)) {
+            return;
+        }
+        double failureRate = (double) totals[1] / totals[0];
+        double slowCallRate = (double) totals[2] / totals[0];
+        if (failureRate >= failureRateThreshold) {
+            transition(key, circuit, OPEN, now,
+                String.format("failure rate %.0f%% over %d deliveries", failureRate * 100, totals[0]));
+        } else if (slowCallRate >= slowCallRateThreshold) {
+            transition(key, circuit, OPEN, now,
+                String.format("slow call rate %.0f%% over %d deliveries", slowCallRate * 100, totals[0]));
+        }
+    }
+
+    // Drops closed circuits with nothing recorded inside the window. The
+    // circuit is flagged under its lock, so a concurrent record() either got
+    // in first (and the circuit is no longer idle) or retries on a new one.
+    @Scheduled(fixedDelayString = "${WEBHOOK_CIRCUIT_WINDOW:30000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, Circuit> entry : circuits.entrySet()) {
+            Circuit circuit = entry.getValue();
+            synchronized (circuit) {
+                if (circuit.idle(now)) {
+                    circuit.evicted = true;
+                    circuits.remove(entry.getKey(), circuit);
+                }
+            }
+        }
+    }
+
+    // How long a delivery turned away by allowRequest() waits before trying
+    // again: until the circuit half-opens, spread out so that parked
+    // deliveries do not all come back at once
+    public long parkDelayMillis(UUID key) {
+        long delay = 0;
+        Circuit circuit = circuits.get(key);
+        if (circuit != null) {
+            synchronized (circuit) {
+                if (OPEN.equals(circuit.state)) {
+                    delay = Math.max(0, circuit.openedAt + openDuration - System.currentTimeMillis());
+                }
+            }
+        }
+        long spread = Math.max(1, openDuration / BUCKETS);
+        return delay + ThreadLocalRandom.current().nextLong(spread);
+    }
+
+    // Gives back a half-open probe slot taken by a delivery that was not sent
+    public void cancel(UUID key) {
+        Circuit circuit = circuits.get(key);
+        if (circuit == null) {
+            return;
+        }
+        synchronized (circuit) {
+            if (HALF_OPEN.equals(circuit.state)) {
+                circuit.probes = Math.max(0, circuit.probes - 1);
+            }
+        }
+    }
+
+    private void transition(UUID key, Circuit circuit, String state, long now, String reason) {
+        if (state.equals(circuit.state)) {
+            if (OPEN.equals(state)) {
+                circuit.openedAt = now;
+            }
+            return;
+        }
+        circuit.state = state;
+        if (OPEN.equals(state)) {
+            circuit.openedAt = now;
+            circuit.probes = 0;
+            System.err.println("Webhook circuit opened for " + key + ": " + reason);
+        } else if (CLOSED.equals(state)) {
+            System.out.println("Webhook circuit closed for " + key);
+        }
+        publish(key, state, circuit.openedAt, now, reason);
+    }
+
+    // State is advisory for the API, so a Redis failure must not affect delivery.
+    // Entries are stored as state|openedAt|expiresAt|reason; the hash itself
+    // expires once no worker has published for as long as an entry lives.
+    private void publish(UUID key, String state, long openedAt, long now, String reason) {
+        try {
+            RMap<String, String> states = redissonClient.getMap(STATE_KEY, StringCodec.INSTANCE);
+            if (CLOSED.equals(state)) {
+                states.fastRemoveAsync(key.toString());
+            } else {
+                long ttl = openDuration + stateTtl;
+                states.fastPutAsync(key.toString(),
+                    state + "|" + openedAt + "|" + (now + ttl) + "|" + (reason == null ? "" : reason));
+                states.expireAsync(Duration.ofMillis(ttl));
+            }
+        } catch (Exception e) {
+            System.err.println("Error publishing webhook circuit state: " + e.getMessage());
+        }
+    }
+
+    // Circuit state for the webhook admin API, as last published by any
+    // worker. An expired entry reads as closed and is removed, unless it was
+    // republished in the meantime.
+    public Map<String, Object> getState(UUID key) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        RMap<String, String> states = redissonClient.getMap(STATE_KEY, StringCodec.INSTANCE);
+        String value = states.get(key.toString());
+        String[] parts = value == null ? null : value.split("\\|", 4);
+        if (parts == null || parts.length < 4 || expired(parts[2])) {
+            if (value != null) {
+                states.removeAsync(key.toString(), value);
+            }
+            result.put("state", CLOSED);
+            return result;
+        }
+        long openedAt = Long.parseLong(parts[1]);
+        result.put("state", parts[0]);
+        result.put("opened_at", format(openedAt));
+        if (OPEN.equals(parts[0])) {
+            result.put("half_open_at", format(openedAt + openDuration));
+        }
+        if (!parts[3].isEmpty()) {
+            result.put("reason", parts[3]);
+        }
+        return result;
+    }
+
+    // Entries without a readable expiry predate it and are treated as expired
+    private static boolean expired(String expiresAt) {
+        try {
+            return Long.parseLong(expiresAt) <= System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static String format(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+            .format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+    }
+}
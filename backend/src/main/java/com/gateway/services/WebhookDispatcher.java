@@ -0,0 +1,189 @@
+package com.gateway.services;
+
+import com.gateway.jobs.Job;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// Asynchronous webhook delivery. Worker threads hand requests to the
+// non-blocking WebhookHttpClient and move straight on to the next job, so
+// thousands of deliveries can wait on merchant endpoints at once without a
+// thread each. Each merchant may have at most WEBHOOK_MERCHANT_MAX_IN_FLIGHT
+// deliveries outstanding; jobs over that cap go back on the queue after a
+// short delay instead of occupying a worker, so one slow endpoint cannot
+// starve the others. Response handling (log row updates, retry scheduling)
+// runs on a small completion pool, never on the HTTP reactor threads.
+@Service
+@Profile("worker")
+@DependsOn({"entityManagerFactory", "redissonClient", "webhookLogWriter"})
+public class WebhookDispatcher {
+
+    @Autowired
+    private WebhookHttpClient webhookHttpClient;
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private WebhookRetryScheduler webhookRetryScheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Upper bound on deliveries outstanding across all merchants
+    @Value("${WEBHOOK_MAX_IN_FLIGHT:5000}")
+    private int maxInFlight;
+
+    @Value("${WEBHOOK_MERCHANT_MAX_IN_FLIGHT:20}")
+    private int merchantMaxInFlight;
+
+    // How long a job over its merchant's cap waits before it is tried again
+    @Value("${WEBHOOK_MERCHANT_DEFER_DELAY:1000}")
+    private long deferDelay;
+
+    @Value("${WEBHOOK_COMPLETION_THREADS:4}")
+    private int completionThreads;
+
+    @Value("${WORKER_SHUTDOWN_TIMEOUT:30000}")
+    private long shutdownTimeout;
+
+    // Requests in flight per merchant; a merchant's entry is removed when its
+    // count drops to zero, and counts only change inside compute calls
+    private final Map<UUID, Integer> merchantInFlight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Semaphore inFlightPermits;
+
+    private ExecutorService completionPool;
+
+    private Counter deferred;
+
+    @PostConstruct
+    public void init() {
+        inFlightPermits = new Semaphore(Math.max(1, maxInFlight));
+
+        AtomicInteger counter = new AtomicInteger();
+        completionPool = Executors.newFixedThreadPool(Math.max(1, completionThreads), runnable ->
+            new Thread(runnable, "webhook-completion-" + counter.incrementAndGet()));
+
+        Gauge.builder("gateway.webhook.in.flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        deferred = Counter.builder("gateway.webhook.deferred").register(meterRegistry);
+    }
+
+    // Sends the job's request and passes the outcome (response or failure) to
+    // the completion on the completion pool. Returns false without sending
+    // when the merchant is at its in-flight cap; the job has then been put
+    // back on the queue. Blocks only when the global in-flight limit is
+    // reached, which throttles queue consumption.
+    public boolean dispatch(Job job, String url, byte[] body, Map<String, String> headers,
+                            BiConsumer<WebhookHttpClient.Response, Throwable> completion) throws InterruptedException {
+        UUID merchantId = job.getMerchantId();
+        if (!acquireMerchant(merchantId)) {
+            defer(job);
+            return false;
+        }
+
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            releaseMerchant(merchantId);
+            throw e;
+        }
+        inFlight.incrementAndGet();
+
+        try {
+            webhookHttpClient.postAsync(url, body, headers).whenComplete((response, error) ->
+                completionPool.execute(() -> complete(merchantId, completion, response, error)));
+        } catch (RuntimeException e) {
+            release(merchantId);
+            throw e;
+        }
+        return true;
+    }
+
+    // Takes one of the merchant's in-flight slots, or returns false when it has none left
+    private boolean acquireMerchant(UUID merchantId) {
+        boolean[] acquired = new boolean[1];
+        merchantInFlight.compute(merchantId, (id, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= Math.max(1, merchantMaxInFlight)) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private void releaseMerchant(UUID merchantId) {
+        merchantInFlight.computeIfPresent(merchantId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void defer(Job job) {
+        deferred.increment();
+        // A deferred retry gives up its claim so its re-queued copy can take it
+        webhookRetryScheduler.release(job, deferDelay);
+        jobQueueService.enqueueJobWithDelay("webhook_queue", job, deferDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void complete(UUID merchantId, BiConsumer<WebhookHttpClient.Response, Throwable> completion,
+                          WebhookHttpClient.Response response, Throwable error) {
+        try {
+            completion.accept(response, error);
+        } catch (Exception e) {
+            System.err.println("Error completing webhook delivery: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            release(merchantId);
+        }
+    }
+
+    private void release(UUID merchantId) {
+        releaseMerchant(merchantId);
+        inFlight.decrementAndGet();
+        inFlightPermits.release();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Let outstanding requests finish so their outcomes are logged
+        long deadline = System.currentTimeMillis() + shutdownTimeout;
+        try {
+            while (inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            if (inFlight.get() > 0) {
+                System.err.println("Webhook dispatcher did not drain " + inFlight.get() + " in-flight deliveries");
+            }
+            completionPool.shutdown();
+            if (!completionPool.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                completionPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            completionPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.gateway.services;
+
+import com.gateway.models.Merchant;
+import com.gateway.models.WebhookEndpoint;
+import com.gateway.repositories.MerchantRepository;
+import com.gateway.repositories.WebhookEndpointRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Routes webhook events to a merchant's endpoints from an in-memory index of
+// (merchant, event type) -> subscribed endpoints, so fanning an event out
+// costs no database query. A merchant's routes are loaded on first use and
+// kept for WEBHOOK_ENDPOINT_CACHE_TTL ms; saving or deleting any of its
+// endpoints drops them on every node through a Redis topic, and the next
+// event reloads them. Merchants without endpoints keep receiving every event
+// at their own webhook_url.
+@Service
+public class WebhookEndpointIndex {
+
+    private static final String INVALIDATION_TOPIC = "webhook_endpoint_invalidations";
+
+    @Autowired
+    private WebhookEndpointRepository webhookEndpointRepository;
+
+    @Autowired
+    private MerchantRepository merchantRepository;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${WEBHOOK_ENDPOINT_CACHE_TTL:300000}")
+    private long ttl;
+
+    private final Map<UUID, Routes> routes = new ConcurrentHashMap<>();
+
+    private RTopic invalidations;
+
+    private int listenerId;
+
+    // One merchant's active endpoints, indexed for routing
+    private static class Routes {
+        final List<WebhookEndpoint> endpoints;
+        // Endpoints for each explicitly subscribed event type, wildcard
+        // subscribers included, in creation order
+        final Map<String, List<WebhookEndpoint>> byEventType = new HashMap<>();
+        // Endpoints for event types nobody subscribed to explicitly
+        final List<WebhookEndpoint> wildcard = new ArrayList<>();
+        final Map<UUID, WebhookEndpoint> byId = new HashMap<>();
+        final long loadedAt;
+
+        Routes(List<WebhookEndpoint> endpoints, long loadedAt) {
+            this.endpoints = endpoints;
+            this.loadedAt = loadedAt;
+            Set<String> eventTypes = new LinkedHashSet<>();
+            for (WebhookEndpoint endpoint : endpoints) {
+                byId.put(endpoint.getId(), endpoint);
+                for (String eventType : endpoint.getEventTypeList()) {
+                    if (WebhookEndpoint.ALL_EVENTS.equals(eventType)) {
+                        wildcard.add(endpoint);
+                    } else {
+                        eventTypes.add(eventType);
+                    }
+                }
+            }
+            for (String eventType : eventTypes) {
+                List<WebhookEndpoint> subscribed = new ArrayList<>();
+                for (WebhookEndpoint endpoint : endpoints) {
+                    List<String> types = endpoint.getEventTypeList();
+                    if (types.contains(eventType) || types.contains(WebhookEndpoint.ALL_EVENTS)) {
+                        subscribed.add(endpoint);
+                    }
+                }
+                byEventType.put(eventType, Collections.unmodifiableList(subscribed));
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        invalidations = redissonClient.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE);
+        listenerId = invalidations.addListener(String.class,
+            (channel, merchantId) -> routes.remove(UUID.fromString(merchantId)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        invalidations.removeListener(listenerId);
+    }
+
+    // Whether events for the merchant are routed through its endpoints rather
+    // than its webhook_url
+    public boolean hasEndpoints(UUID merchantId) {
+        return !routes(merchantId).endpoints.isEmpty();
+    }
+
+    // Active endpoints subscribed to the event type
+    public List<WebhookEndpoint> endpointsFor(UUID merchantId, String eventType) {
+        Routes merchantRoutes = routes(merchantId);
+        return merchantRoutes.byEventType.getOrDefault(eventType, merchantRoutes.wildcard);
+    }
+
+    // Where a delivery goes: the given endpoint if it is still active, or the
+    // merchant's own webhook_url when no endpoint is given. Null if there is
+    // nowhere to send it.
+    public WebhookEndpoint target(UUID merchantId, UUID endpointId) {
+        if (endpointId != null) {
+            WebhookEndpoint endpoint = routes(merchantId).byId.get(endpointId);
+            if (endpoint == null) {
+                System.out.println("Webhook endpoint removed or disabled: " + endpointId);
+            }
+            return endpoint;
+        }
+
+        Optional<Merchant> merchantOpt = merchantRepository.findById(merchantId);
+        if (!merchantOpt.isPresent()) {
+            System.err.println("Merchant not found: " + merchantId);
+            return null;
+        }
+        Merchant merchant = merchantOpt.get();
+        if (merchant.getWebhookUrl() == null || merchant.getWebhookUrl().isEmpty()) {
+            System.out.println("Webhook URL not configured for merchant: " + merchantId);
+            return null;
+        }
+        return new WebhookEndpoint(merchantId, merchant.getWebhookUrl(), merchant.getWebhookSecret());
+    }
+
+    private Routes routes(UUID merchantId) {
+        long now = System.currentTimeMillis();
+        Routes cached = routes.get(merchantId);
+        if (cached != null && now - cached.loadedAt < ttl) {
+            return cached;
+        }
+        List<WebhookEndpoint> active = new ArrayList<>();
+        for (WebhookEndpoint endpoint : webhookEndpointRepository.findByMerchantIdOrderByCreatedAt(merchantId)) {
+            if (Boolean.TRUE.equals(endpoint.getIsActive())) {
+                active.add(endpoint);
+            }
+        }
+        Routes loaded = new Routes(Collections.unmodifiableList(active), now);
+        routes.put(merchantId, loaded);
+        return loaded;
+    }
+
+    // Drops the merchant's routes on every node
+    public void invalidate(UUID merchantId) {
+        routes.remove(merchantId);
+        try {
+            invalidations.publish(merchantId.toString());
+        } catch (Exception e) {
+            System.err.println("Error publishing webhook endpoint invalidation: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.gateway.services;
+
+import com.gateway.models.WebhookEndpoint;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+// JPA listener on WebhookEndpoint that drops the merchant's routes from every
+// node's endpoint index when one of its endpoints is saved or deleted.
+public class WebhookEndpointInvalidator {
+
+    @Autowired
+    private ObjectProvider<WebhookEndpointIndex> webhookEndpointIndex;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void endpointChanged(WebhookEndpoint endpoint) {
+        WebhookEndpointIndex index = webhookEndpointIndex.getIfAvailable();
+        if (index != null && endpoint.getMerchantId() != null) {
+            index.invalidate(endpoint.getMerchantId());
+        }
+    }
+}
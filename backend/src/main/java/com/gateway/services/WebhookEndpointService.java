@@ -0,0 +1,138 @@
+package com.gateway.services;
+
+import com.gateway.models.Merchant;
+import com.gateway.models.WebhookEndpoint;
+import com.gateway.repositories.WebhookEndpointRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+@Service
+public class WebhookEndpointService {
+
+    // Event types look like "payment.success"; "*" subscribes to all of them
+    private static final Pattern EVENT_TYPE = Pattern.compile("[a-z_]+\\.[a-z_]+");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Autowired
+    private WebhookEndpointRepository webhookEndpointRepository;
+
+    @Autowired
+    private WebhookEndpointIndex webhookEndpointIndex;
+
+    public List<WebhookEndpoint> listEndpoints(Merchant merchant) {
+        return webhookEndpointRepository.findByMerchantIdOrderByCreatedAt(merchant.getId());
+    }
+
+    public WebhookEndpoint getEndpoint(Merchant merchant, String endpointId) {
+        UUID id;
+        try {
+            id = UUID.fromString(endpointId);
+        } catch (IllegalArgumentException e) {
+            throw ApiException.notFound("Webhook endpoint not found");
+        }
+        return webhookEndpointRepository.findByIdAndMerchantId(id, merchant.getId())
+            .orElseThrow(() -> ApiException.notFound("Webhook endpoint not found"));
+    }
+
+    // A secret is generated unless the merchant brings its own
+    public WebhookEndpoint createEndpoint(Merchant merchant, String url, List<String> events, String secret) {
+        WebhookEndpoint endpoint = new WebhookEndpoint(merchant.getId(), validateUrl(url),
+            secret == null || secret.isEmpty() ? generateSecret() : validateSecret(secret));
+        endpoint.setEventTypeList(validateEvents(events == null ? List.of(WebhookEndpoint.ALL_EVENTS) : events));
+        return save(endpoint);
+    }
+
+    // Only the fields present in the request change
+    public WebhookEndpoint updateEndpoint(Merchant merchant, String endpointId, String url, List<String> events,
+                                          String secret, Boolean active) {
+        WebhookEndpoint endpoint = getEndpoint(merchant, endpointId);
+        if (url != null) {
+            endpoint.setUrl(validateUrl(url));
+        }
+        if (events != null) {
+            endpoint.setEventTypeList(validateEvents(events));
+        }
+        if (secret != null) {
+            endpoint.setSecret(validateSecret(secret));
+        }
+        if (active != null) {
+            endpoint.setIsActive(active);
+        }
+        return save(endpoint);
+    }
+
+    // Pending retries to a deleted endpoint are dropped; its logs keep the id
+    public void deleteEndpoint(Merchant merchant, String endpointId) {
+        WebhookEndpoint endpoint = getEndpoint(merchant, endpointId);
+        webhookEndpointRepository.delete(endpoint);
+        webhookEndpointIndex.invalidate(merchant.getId());
+    }
+
+    // The entity listener invalidates on flush, which can run before commit;
+    // invalidating again once the save has committed keeps another node from
+    // caching the old routes in between
+    private WebhookEndpoint save(WebhookEndpoint endpoint) {
+        WebhookEndpoint saved = webhookEndpointRepository.save(endpoint);
+        webhookEndpointIndex.invalidate(saved.getMerchantId());
+        return saved;
+    }
+
+    private static String validateUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            throw ApiException.badRequest("url is required");
+        }
+        try {
+            URI uri = new URI(url);
+            if (("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) && uri.getHost() != null) {
+                return url;
+            }
+        } catch (Exception e) {
+            // reported below
+        }
+        throw ApiException.badRequest("url must be an absolute http or https URL");
+    }
+
+    private static List<String> validateEvents(List<String> events) {
+        List<String> types = new ArrayList<>();
+        for (String event : events) {
+            String type = event == null ? "" : event.trim();
+            if (!WebhookEndpoint.ALL_EVENTS.equals(type) && !EVENT_TYPE.matcher(type).matches()) {
+                throw ApiException.badRequest("Invalid event type: " + event);
+            }
+            if (!types.contains(type)) {
+                types.add(type);
+            }
+        }
+        if (types.isEmpty()) {
+            throw ApiException.badRequest("events must not be empty");
+        }
+        return types;
+    }
+
+    private static String validateSecret(String secret) {
+        if (secret.length() < 16 || secret.length() > 64) {
+            throw ApiException.badRequest("secret must be 16 to 64 characters");
+        }
+        return secret;
+    }
+
+    private static String generateSecret() {
+        byte[] bytes = new byte[24];
+        RANDOM.nextBytes(bytes);
+        StringBuilder secret = new StringBuilder("whsec_");
+        for (byte b : bytes) {
+            secret.append(HEX[(b >>> 4) & 0x0F]).append(HEX[b & 0x0F]);
+        }
+        return secret.toString();
+    }
+}
@@ -0,0 +1,96 @@
+package com.gateway.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.gateway.models.Payment;
+import com.gateway.models.Refund;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Writes webhook event payloads as UTF-8 JSON straight into bytes with
+// Jackson's streaming generator, so values are escaped properly and the
+// payload never exists as a String. The bytes are produced once and the same
+// array is signed, sent and logged. The write buffer is reused per thread;
+// the returned array is the payload's own copy.
+public final class WebhookEventSerializer {
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+        .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+        .build();
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private static final ThreadLocal<ByteArrayBuilder> BUFFER = ThreadLocal.withInitial(() -> new ByteArrayBuilder(512));
+
+    private WebhookEventSerializer() {}
+
+    // {"event": ..., "timestamp": ..., "data": {"payment": {...}}}
+    public static byte[] paymentEvent(String event, Payment payment) {
+        return write(event, "payment", json -> {
+            json.writeStringField("id", payment.getId());
+            json.writeStringField("order_id", payment.getOrderId());
+            writeNumberField(json, "amount", payment.getAmount());
+            json.writeStringField("currency", payment.getCurrency());
+            json.writeStringField("method", payment.getMethod());
+            json.writeStringField("status", payment.getStatus());
+            json.writeStringField("created_at", format(payment.getCreatedAt()));
+        });
+    }
+
+    // {"event": ..., "timestamp": ..., "data": {"refund": {...}}}
+    public static byte[] refundEvent(String event, Refund refund) {
+        return write(event, "refund", json -> {
+            json.writeStringField("id", refund.getId());
+            json.writeStringField("payment_id", refund.getPaymentId());
+            writeNumberField(json, "amount", refund.getAmount());
+            json.writeStringField("reason", refund.getReason());
+            json.writeStringField("status", refund.getStatus());
+            json.writeStringField("created_at", format(refund.getCreatedAt()));
+            json.writeStringField("processed_at", format(refund.getProcessedAt()));
+        });
+    }
+
+    @FunctionalInterface
+    private interface Fields {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    // Writes the event envelope around the entity's fields
+    private static byte[] write(String event, String entity, Fields fields) {
+        ByteArrayBuilder buffer = BUFFER.get();
+        buffer.reset();
+        try (JsonGenerator json = FACTORY.createGenerator(buffer)) {
+            json.writeStartObject();
+            json.writeStringField("event", event);
+            json.writeStringField("timestamp", String.valueOf(System.currentTimeMillis() / 1000));
+            json.writeObjectFieldStart("data");
+            json.writeObjectFieldStart(entity);
+            fields.write(json);
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeEndObject();
+        } catch (IOException e) {
+            // Only the in-memory buffer is written to
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void writeNumberField(JsonGenerator json, String name, Integer value) throws IOException {
+        json.writeFieldName(name);
+        if (value == null) {
+            json.writeNull();
+        } else {
+            json.writeNumber(value);
+        }
+    }
+
+    private static String format(LocalDateTime value) {
+        return value == null ? null : value.format(TIMESTAMP);
+    }
+}
@@ -0,0 +1,460 @@
+package com.gateway.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+// Shared HTTP client for webhook delivery. Connections to each merchant host
+// are pooled and kept alive between deliveries, so a steady stream of
+// webhooks to one merchant reuses warm connections instead of paying a TCP
+// and TLS handshake every time. Each host gets at most
+// WEBHOOK_HTTP_MAX_PER_HOST connections (overridable per host), which also
+// caps how hard a backlog can hit a single merchant. The client is
+// non-blocking: a few I/O reactor threads multiplex every open connection,
+// and postAsync completes its future from a reactor thread. Responses are
+// read up to WEBHOOK_HTTP_MAX_RESPONSE_BYTES; the rest is discarded.
+//
+// Metrics are tagged by host for at most WEBHOOK_HTTP_METRIC_HOSTS hosts at a
+// time, plus every host with its own limit; other hosts share host="other".
+// Hosts unused for WEBHOOK_HTTP_ROUTE_IDLE_TIMEOUT ms are forgotten and their
+// meters removed, which frees their tag for another host. A host reached over
+// both http and https has two routes sharing one set of request timers, which
+// are removed only with the last of them.
+@Service
+@Profile("worker")
+public class WebhookHttpClient {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${WEBHOOK_HTTP_MAX_CONNECTIONS:200}")
+    private int maxConnections;
+
+    @Value("${WEBHOOK_HTTP_MAX_PER_HOST:20}")
+    private int maxPerHost;
+
+    // host=connections pairs overriding WEBHOOK_HTTP_MAX_PER_HOST
+    @Value("${WEBHOOK_HTTP_HOST_LIMITS:}")
+    private String hostLimitOverrides;
+
+    @Value("${WEBHOOK_HTTP_CONNECT_TIMEOUT:5000}")
+    private long connectTimeout;
+
+    @Value("${WEBHOOK_HTTP_READ_TIMEOUT:5000}")
+    private long readTimeout;
+
+    // How long a delivery may wait for a free connection to its host
+    @Value("${WEBHOOK_HTTP_LEASE_TIMEOUT:5000}")
+    private long leaseTimeout;
+
+    // Idle pooled connections are closed after this long
+    @Value("${WEBHOOK_HTTP_IDLE_TIMEOUT:30000}")
+    private long idleTimeout;
+
+    // I/O reactor threads shared by all webhook connections
+    @Value("${WEBHOOK_HTTP_IO_THREADS:2}")
+    private int ioThreads;
+
+    // Bytes of each response body kept; the response is still read to the end
+    @Value("${WEBHOOK_HTTP_MAX_RESPONSE_BYTES:8192}")
+    private int maxResponseBytes;
+
+    // Hosts with their own metric tag, besides those in WEBHOOK_HTTP_HOST_LIMITS
+    @Value("${WEBHOOK_HTTP_METRIC_HOSTS:50}")
+    private int maxMetricHosts;
+
+    // A host unused this long (ms) is forgotten and its meters removed
+    @Value("${WEBHOOK_HTTP_ROUTE_IDLE_TIMEOUT:600000}")
+    private long routeIdleTimeout;
+
+    private static final String OTHER_HOST = "other";
+
+    private final Map<String, Integer> hostLimits = new HashMap<>();
+
+    // Routes in use, keyed by scheme://host:port
+    private final Map<String, RouteState> routes = new ConcurrentHashMap<>();
+
+    // Hosts currently holding their own metric tag, overrides excluded
+    private final AtomicInteger metricHosts = new AtomicInteger();
+
+    // Request timers for hosts with a tag, shared by the host's routes
+    private final Map<String, HostMeters> hostMeters = new ConcurrentHashMap<>();
+
+    // Request timers for hosts without their own tag, by outcome
+    private final Map<String, Timer> otherTimers = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastRouteSweep = new AtomicLong(System.currentTimeMillis());
+
+    private PoolingAsyncClientConnectionManager connectionManager;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    public static class Response {
+        private final int statusCode;
+        private final String body;
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isSuccessful() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+    }
+
+    // Request timers of a tagged host, by outcome. Counts the routes using
+    // them (guarded by the hostMeters entry) so they outlive any one route.
+    private static class HostMeters {
+        final Map<String, Timer> timers = new ConcurrentHashMap<>();
+        // Whether the host holds one of the WEBHOOK_HTTP_METRIC_HOSTS tags
+        final boolean ownsTag;
+        int routes;
+
+        HostMeters(boolean ownsTag) {
+            this.ownsTag = ownsTag;
+        }
+    }
+
+    // A pool route with the meters registered for it. A route is only
+    // forgotten while no request on it is in flight, so no meter is
+    // registered again after it has been removed.
+    private static class RouteState {
+        final HttpRoute route;
+        // Tag value for the host's meters: the host, or "other"
+        final String metricHost;
+        // The host's timers; null for hosts tagged "other"
+        final HostMeters meters;
+        final List<Meter> gauges = new ArrayList<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile long lastUsed;
+
+        RouteState(HttpRoute route, String metricHost, HostMeters meters) {
+            this.route = route;
+            this.metricHost = metricHost;
+            this.meters = meters;
+        }
+    }
+
+    // Keeps the first maxResponseBytes of the body and drops the rest
+    private static class CappedResponseConsumer extends AbstractBinResponseConsumer<Response> {
+        private final int limit;
+        private int statusCode;
+        private Charset charset;
+        private ByteArrayOutputStream body;
+
+        CappedResponseConsumer(int limit) {
+            this.limit = Math.max(0, limit);
+        }
+
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) {
+            statusCode = response.getCode();
+            charset = contentType != null && contentType.getCharset() != null
+                ? contentType.getCharset()
+                : StandardCharsets.UTF_8;
+            body = new ByteArrayOutputStream(Math.min(limit, 1024));
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) {
+            int kept = Math.min(limit - body.size(), src.remaining());
+            if (kept > 0) {
+                byte[] chunk = new byte[kept];
+                src.get(chunk);
+                body.write(chunk, 0, kept);
+            }
+            src.position(src.limit());
+        }
+
+        @Override
+        protected Response buildResult() {
+            return new Response(statusCode, body == null ? null : new String(body.toByteArray(), charset));
+        }
+
+        @Override
+        public void releaseResources() {
+            body = null;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String entry : hostLimitOverrides.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                hostLimits.put(parts[0].trim().toLowerCase(), Integer.parseInt(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid webhook host limit: " + entry);
+            }
+        }
+
+        connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(Math.max(1, maxConnections))
+            .setMaxConnPerRoute(Math.max(1, maxPerHost))
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                // Re-check connections idle for over a second before reuse
+                .setValidateAfterInactivity(TimeValue.ofSeconds(1))
+                .build())
+            // One request per connection, so per-host limits mean what they say
+            .setDefaultTlsConfig(TlsConfig.custom().setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1).build())
+            .build();
+
+        httpClient = HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setIoThreadCount(Math.max(1, ioThreads))
+                .build())
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(leaseTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeout))
+            .disableAutomaticRetries()
+            .build();
+        httpClient.start();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "webhooks").bindTo(meterRegistry);
+    }
+
+    // Blocking form of postAsync
+    public Response post(String url, byte[] body, Map<String, String> headers) throws IOException, InterruptedException {
+        try {
+            return postAsync(url, body, headers).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    // Sends the request without blocking; the future completes from an I/O
+    // reactor thread, so callers must not do blocking work on it directly
+    public CompletableFuture<Response> postAsync(String url, byte[] body, Map<String, String> headers) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        URI uri;
+        RouteState route;
+        try {
+            uri = URI.create(url);
+            route = acquireRoute(uri);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(new IOException("Invalid webhook URL: " + url, e));
+            return result;
+        }
+
+        SimpleRequestBuilder builder = SimpleRequestBuilder.post(uri).setBody(body, ContentType.APPLICATION_JSON);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.setHeader(header.getKey(), header.getValue());
+        }
+        SimpleHttpRequest request = builder.build();
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            httpClient.execute(SimpleRequestProducer.create(request), new CappedResponseConsumer(maxResponseBytes),
+                new FutureCallback<Response>() {
+                    @Override
+                    public void completed(Response response) {
+                        record(sample, route,
+                            response.isSuccessful() ? "success" : "http_" + response.getStatusCode() / 100 + "xx");
+                        result.complete(response);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        record(sample, route, "error");
+                        result.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        record(sample, route, "error");
+                        result.completeExceptionally(new IOException("Webhook request cancelled"));
+                    }
+                });
+        } catch (RuntimeException e) {
+            record(sample, route, "error");
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // Records the request and lets the route be forgotten once idle
+    private void record(Timer.Sample sample, RouteState route, String outcome) {
+        Map<String, Timer> timers = route.meters != null ? route.meters.timers : otherTimers;
+        sample.stop(timers.computeIfAbsent(outcome, key -> Timer.builder("gateway.webhook.http.requests")
+            .tag("host", route.metricHost)
+            .tag("outcome", outcome)
+            .register(meterRegistry)));
+        route.lastUsed = System.currentTimeMillis();
+        route.inFlight.decrementAndGet();
+    }
+
+    // Resolves the pool route for a URL the same way the client's route
+    // planner does and marks a request in flight on it. The first time a
+    // host is seen its per-host limit is applied and, if it gets its own
+    // metric tag, its pool gauges are registered.
+    private RouteState acquireRoute(URI uri) {
+        long now = System.currentTimeMillis();
+        sweepIdleRoutes(now);
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+        int port = uri.getPort() > 0 ? uri.getPort() : ("https".equals(scheme) ? 443 : 80);
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase();
+        return routes.compute(scheme + "://" + host + ":" + port, (key, existing) -> {
+            RouteState state = existing != null ? existing : newRoute(scheme, host, port);
+            state.inFlight.incrementAndGet();
+            state.lastUsed = now;
+            return state;
+        });
+    }
+
+    private RouteState newRoute(String scheme, String host, int port) {
+        HttpRoute route = new HttpRoute(new HttpHost(scheme, host, port), null, "https".equals(scheme));
+        Integer limit = hostLimits.get(host);
+        if (limit != null) {
+            connectionManager.setMaxPerRoute(route, Math.max(1, limit));
+        }
+        // The host's first route takes a tag for it, if one is free
+        HostMeters meters = hostMeters.compute(host, (h, existing) -> {
+            if (existing == null) {
+                boolean ownsTag = false;
+                if (limit == null) {
+                    if (metricHosts.incrementAndGet() > Math.max(0, maxMetricHosts)) {
+                        metricHosts.decrementAndGet();
+                        return null;
+                    }
+                    ownsTag = true;
+                }
+                existing = new HostMeters(ownsTag);
+            }
+            existing.routes++;
+            return existing;
+        });
+        if (meters == null) {
+            return new RouteState(route, OTHER_HOST, null);
+        }
+        RouteState state = new RouteState(route, host, meters);
+        state.gauges.add(hostGauge("gateway.webhook.http.pool.leased", route, host, PoolStats::getLeased));
+        state.gauges.add(hostGauge("gateway.webhook.http.pool.available", route, host, PoolStats::getAvailable));
+        state.gauges.add(hostGauge("gateway.webhook.http.pool.pending", route, host, PoolStats::getPending));
+        state.gauges.add(hostGauge("gateway.webhook.http.pool.max", route, host, PoolStats::getMax));
+        return state;
+    }
+
+    private Meter hostGauge(String name, HttpRoute route, String host, ToDoubleFunction<PoolStats> stat) {
+        return Gauge.builder(name, connectionManager, manager -> stat.applyAsDouble(manager.getStats(route)))
+            .tag("host", host)
+            .tag("port", String.valueOf(route.getTargetHost().getPort()))
+            .register(meterRegistry);
+    }
+
+    // Forgets routes idle past the timeout, at most once per minute; routes
+    // with their own limit keep their meters
+    private void sweepIdleRoutes(long now) {
+        long previous = lastRouteSweep.get();
+        if (now - previous < Math.min(routeIdleTimeout, 60000) || !lastRouteSweep.compareAndSet(previous, now)) {
+            return;
+        }
+        for (String key : routes.keySet()) {
+            routes.computeIfPresent(key, (k, state) -> {
+                if (state.inFlight.get() > 0 || now - state.lastUsed < routeIdleTimeout
+                        || hostLimits.containsKey(state.metricHost)) {
+                    return state;
+                }
+                for (Meter gauge : state.gauges) {
+                    meterRegistry.remove(gauge);
+                }
+                if (state.meters != null) {
+                    releaseHostMeters(state.metricHost);
+                }
+                return null;
+            });
+        }
+    }
+
+    // Drops a forgotten route's hold on its host's timers, removing them and
+    // freeing the host's tag once no route uses them
+    private void releaseHostMeters(String host) {
+        hostMeters.computeIfPresent(host, (h, meters) -> {
+            if (--meters.routes > 0) {
+                return meters;
+            }
+            for (Timer timer : meters.timers.values()) {
+                meterRegistry.remove(timer);
+            }
+            if (meters.ownsTag) {
+                metricHosts.decrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+}
@@ -0,0 +1,128 @@
+package com.gateway.services;
+
+import com.gateway.jobs.DeliverWebhookJob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ordered webhook delivery. With WEBHOOK_LANES > 0, new webhook events are
+// hashed by merchant (or merchant and payment, per WEBHOOK_LANE_KEY) onto a
+// fixed set of lane queues, and each lane is drained by a single consumer in
+// the whole cluster, one delivery at a time. Events for one key therefore go
+// out in the order they were published, while throughput grows with the
+// lane count. A failed or parked event is retried in place by the lane's
+// consumer, holding back the events queued behind it on the lane until it
+// is delivered or given up; an event held by a worker that died is taken
+// over by the retry sweeper on the shared queue.
+// Producers and workers must agree on the lane count; changing it reshuffles
+// keys while the old lanes drain.
+@Service
+public class WebhookLanes {
+
+    public static final String WEBHOOK_QUEUE = "webhook_queue";
+
+    private static final String LANE_PREFIX = WEBHOOK_QUEUE + ":lane:";
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Environment environment;
+
+    // Lane queues; 0 keeps every webhook on the shared, unordered queue
+    @Value("${WEBHOOK_LANES:0}")
+    private int laneCount;
+
+    // merchant: one order per merchant; payment: one order per payment
+    @Value("${WEBHOOK_LANE_KEY:merchant}")
+    private String laneKey;
+
+    // Lanes this process currently consumes
+    private final AtomicInteger ownedLanes = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        laneCount = Math.max(0, laneCount);
+        Gauge.builder("gateway.webhook.lanes", this, lanes -> lanes.laneCount).register(meterRegistry);
+        if (environment.acceptsProfiles(Profiles.of("worker"))) {
+            Gauge.builder("gateway.webhook.lanes.owned", ownedLanes, AtomicInteger::get).register(meterRegistry);
+            return;
+        }
+        // Lane depth and the age of each lane's oldest event, which is how far
+        // the lane lags behind
+        for (int lane = 0; lane < laneCount; lane++) {
+            String queueName = laneQueue(lane);
+            Gauge.builder("gateway.webhook.lane.length", this, lanes -> lanes.queueStat(queueName, "length"))
+                .tag("lane", String.valueOf(lane))
+                .register(meterRegistry);
+            Gauge.builder("gateway.webhook.lane.lag", this, lanes -> lanes.queueStat(queueName, "oldest_age_ms") / 1000.0)
+                .tag("lane", String.valueOf(lane))
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        }
+    }
+
+    private double queueStat(String queueName, String stat) {
+        Object value = jobQueueService.getQueueStats(queueName).get(stat);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public String laneQueue(int lane) {
+        return LANE_PREFIX + lane;
+    }
+
+    // Queue that new events about the payment go on
+    public String queueFor(UUID merchantId, String paymentId) {
+        if (laneCount == 0) {
+            return WEBHOOK_QUEUE;
+        }
+        String key = "payment".equals(laneKey) && paymentId != null
+            ? merchantId + ":" + paymentId
+            : String.valueOf(merchantId);
+        // String.hashCode is specified, so every process picks the same lane
+        return laneQueue(Math.floorMod(key.hashCode(), laneCount));
+    }
+
+    public void publish(DeliverWebhookJob job, String paymentId) {
+        jobQueueService.enqueueJob(queueFor(job.getMerchantId(), paymentId), job);
+    }
+
+    // Publishes events in list order, grouped into one enqueue per lane
+    public void publishAll(List<DeliverWebhookJob> jobs, List<String> paymentIds) {
+        Map<String, List<DeliverWebhookJob>> byQueue = new LinkedHashMap<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            byQueue.computeIfAbsent(queueFor(jobs.get(i).getMerchantId(), paymentIds.get(i)),
+                queue -> new ArrayList<>()).add(jobs.get(i));
+        }
+        for (Map.Entry<String, List<DeliverWebhookJob>> queue : byQueue.entrySet()) {
+            jobQueueService.enqueueJobs(queue.getKey(), queue.getValue());
+        }
+    }
+
+    public void laneAcquired() {
+        ownedLanes.incrementAndGet();
+    }
+
+    public void laneReleased() {
+        ownedLanes.decrementAndGet();
+    }
+}
@@ -0,0 +1,181 @@
+package com.gateway.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+// Write-behind buffer for webhook attempt results. Delivery completions hand
+// their outcome here and move on; the buffer is flushed to webhook_logs with
+// JDBC batch statements every WEBHOOK_LOG_FLUSH_INTERVAL ms. Each event has a
+// single row: the first attempt inserts it under an id chosen up front, later
+// attempts update it in place. An update never moves a row back to an
+// earlier attempt, so writes landing out of order are harmless. Payloads are
+// passed as the delivered UTF-8 bytes and decoded by Postgres. A batch the
+// database rejects is retried row by row; a row that still fails for any
+// reason but an unavailable database is logged and dropped, so one bad row
+// cannot stall every write behind it.
+@Service
+@Profile("worker")
+public class WebhookLogWriter {
+
+    private static final String UPSERT_ATTEMPT =
+        "INSERT INTO webhook_logs (id, merchant_id, endpoint_id, event, payload, status, attempts, " +
+        "last_attempt_at, next_retry_at, response_code, response_body, created_at) " +
+        "VALUES (?, ?, ?, ?, CAST(convert_from(?, 'UTF8') AS JSONB), ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP) " +
+        "ON CONFLICT (id) DO UPDATE SET status = EXCLUDED.status, attempts = EXCLUDED.attempts, " +
+        "last_attempt_at = EXCLUDED.last_attempt_at, next_retry_at = EXCLUDED.next_retry_at, " +
+        "response_code = EXCLUDED.response_code, response_body = EXCLUDED.response_body " +
+        "WHERE webhook_logs.attempts <= EXCLUDED.attempts";
+
+    private static final String UPDATE_BATCH_ATTEMPT =
+        "UPDATE webhook_logs SET status = ?, attempts = ?, last_attempt_at = ?, next_retry_at = ?, " +
+        "response_code = ?, response_body = ? WHERE batch_id = ? AND attempts <= ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Rows written per batch statement
+    @Value("${WEBHOOK_LOG_BATCH_SIZE:500}")
+    private int batchSize;
+
+    // Response bodies are cut to this many characters before they are buffered
+    @Value("${WEBHOOK_LOG_RESPONSE_BODY_LIMIT:8192}")
+    private int responseBodyLimit;
+
+    // Past this many buffered results the caller writes its own synchronously,
+    // which bounds memory while the database is slow or unavailable
+    @Value("${WEBHOOK_LOG_BUFFER_CAPACITY:50000}")
+    private int bufferCapacity;
+
+    // Buffered rows, guarded by this
+    private final Deque<Object[]> attempts = new ArrayDeque<>();
+
+    private final Deque<Object[]> batchAttempts = new ArrayDeque<>();
+
+    // Records one attempt of a single event, creating its row on the first attempt
+    public void recordAttempt(UUID id, UUID merchantId, UUID endpointId, String event, byte[] payload, String status,
+                              int attempt, LocalDateTime lastAttemptAt, Integer responseCode, String responseBody,
+                              LocalDateTime nextRetryAt) {
+        Object[] row = new Object[] {id, merchantId, endpointId, event, payload, status, attempt,
+            timestamp(lastAttemptAt), timestamp(nextRetryAt), responseCode, sanitize(responseBody)};
+        synchronized (this) {
+            if (attempts.size() + batchAttempts.size() < bufferCapacity) {
+                attempts.add(row);
+                return;
+            }
+        }
+        jdbcTemplate.update(UPSERT_ATTEMPT, row);
+    }
+
+    // Records one attempt of a batch on every event row in it
+    public void recordBatchAttempt(UUID batchId, String status, int attempt, LocalDateTime lastAttemptAt,
+                                   Integer responseCode, String responseBody, LocalDateTime nextRetryAt) {
+        Object[] row = new Object[] {status, attempt, timestamp(lastAttemptAt), timestamp(nextRetryAt),
+            responseCode, sanitize(responseBody), batchId, attempt};
+        synchronized (this) {
+            if (attempts.size() + batchAttempts.size() < bufferCapacity) {
+                batchAttempts.add(row);
+                return;
+            }
+        }
+        jdbcTemplate.update(UPDATE_BATCH_ATTEMPT, row);
+    }
+
+    @Scheduled(fixedDelayString = "${WEBHOOK_LOG_FLUSH_INTERVAL:100}")
+    public void flush() {
+        try {
+            // Keep going while batches come back full so a backlog drains at once
+            while (flushBatch(attempts, UPSERT_ATTEMPT) + flushBatch(batchAttempts, UPDATE_BATCH_ATTEMPT)
+                    >= Math.max(1, batchSize)) {
+                // next batch
+            }
+        } catch (Exception e) {
+            System.err.println("Error flushing webhook logs: " + e.getMessage());
+        }
+    }
+
+    private int flushBatch(Deque<Object[]> buffer, String sql) {
+        List<Object[]> rows = new ArrayList<>();
+        synchronized (this) {
+            while (rows.size() < Math.max(1, batchSize) && !buffer.isEmpty()) {
+                rows.add(buffer.poll());
+            }
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            jdbcTemplate.batchUpdate(sql, rows);
+        } catch (RuntimeException e) {
+            if (unavailable(e)) {
+                requeue(buffer, rows, 0);
+                throw e;
+            }
+            // Something in the batch was rejected; find it row by row
+            for (int i = 0; i < rows.size(); i++) {
+                try {
+                    jdbcTemplate.update(sql, rows.get(i));
+                } catch (RuntimeException rowError) {
+                    if (unavailable(rowError)) {
+                        requeue(buffer, rows, i);
+                        throw rowError;
+                    }
+                    System.err.println("Dropping webhook log row rejected by the database: " + rowError.getMessage());
+                }
+            }
+        }
+        return rows.size();
+    }
+
+    // Puts rows from index first onward back in their original order for the next flush
+    private void requeue(Deque<Object[]> buffer, List<Object[]> rows, int first) {
+        synchronized (this) {
+            for (int i = rows.size() - 1; i >= first; i--) {
+                buffer.addFirst(rows.get(i));
+            }
+        }
+    }
+
+    // Whether the write failed because the database could not be reached,
+    // rather than because it rejected the rows
+    private static boolean unavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+            || e instanceof DataAccessResourceFailureException;
+    }
+
+    // Postgres TEXT cannot hold NUL characters, and endpoints may answer with
+    // anything, so bodies are cleaned and cut before they are stored
+    private String sanitize(String responseBody) {
+        if (responseBody == null) {
+            return null;
+        }
+        String body = responseBody.length() > responseBodyLimit
+            ? responseBody.substring(0, Math.max(0, responseBodyLimit))
+            : responseBody;
+        return body.indexOf('\u0000') < 0 ? body : body.replace("\u0000", "");
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value == null ? null : Timestamp.valueOf(value);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,126 @@
+package com.gateway.services;
+
+import com.gateway.jobs.DeliverWebhookBatchJob;
+import com.gateway.jobs.DeliverWebhookJob;
+import com.gateway.jobs.Job;
+import com.gateway.repositories.WebhookLogRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Schedules webhook re-deliveries on the webhook queue's delayed path (a
+// Redisson RDelayedQueue on the Redis backends) following the backoff schedule,
+// so retries are driven by timers rather than by scanning webhook_logs. Each
+// delay is jittered so a merchant coming back from an outage receives its
+// backlog spread out instead of all at once. A retry only goes out after
+// claiming its webhook_logs row, which WebhookRetrySweeper does as well for
+// retries whose timer was lost, so each attempt is delivered once.
+@Service
+@Profile("worker")
+public class WebhookRetryScheduler {
+
+    // Attempts per webhook including the first delivery
+    public static final int MAX_ATTEMPTS = 5;
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private WebhookLogRepository webhookLogRepository;
+
+    @Value("${WEBHOOK_RETRY_INTERVALS_TEST:false}")
+    private boolean webhookRetryIntervalsTest;
+
+    // Fraction of each delay added or removed at random
+    @Value("${WEBHOOK_RETRY_JITTER:0.2}")
+    private double jitter;
+
+    // How long a claimed retry is held before others may take it over
+    @Value("${WEBHOOK_RETRY_LEASE:60000}")
+    private long lease;
+
+    // Allowance for clock differences between worker nodes
+    @Value("${WEBHOOK_RETRY_CLOCK_SKEW:1000}")
+    private long clockSkew;
+
+    public boolean hasAttemptsLeft(int attempts) {
+        return attempts < MAX_ATTEMPTS;
+    }
+
+    // Delay before the attempt that follows the given one, jitter included
+    public long nextRetryDelayMillis(int attempt) {
+        long delayMillis = TimeUnit.SECONDS.toMillis(baseDelaySeconds(attempt));
+        double spread = Math.max(0, Math.min(1, jitter));
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * spread;
+        return Math.max(0, Math.round(delayMillis * factor));
+    }
+
+    private long baseDelaySeconds(int attempt) {
+        if (webhookRetryIntervalsTest) {
+            // Test intervals: 0s, 5s, 10s, 15s, 20s
+            switch (attempt) {
+                case 1: return 5;
+                case 2: return 10;
+                case 3: return 15;
+                case 4: return 20;
+                default: return 20;
+            }
+        }
+        // Production intervals: immediate, 1min, 5min, 30min, 2hr
+        switch (attempt) {
+            case 1: return 60;
+            case 2: return 300;
+            case 3: return 1800;
+            case 4: return 7200;
+            default: return 7200;
+        }
+    }
+
+    public void scheduleRetry(Job retry, long delayMillis) {
+        jobQueueService.enqueueJobWithDelay("webhook_queue", retry, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Claims the log row(s) of a retry before it is delivered. Returns false
+    // when the attempt is already taken or no longer due (delivered, given
+    // up, or reset by a manual retry); the job should then be dropped. First
+    // attempts have no row yet and need no claim.
+    public boolean claim(Job job) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime dueBy = now.plus(clockSkew, ChronoUnit.MILLIS);
+        LocalDateTime leaseUntil = now.plus(lease, ChronoUnit.MILLIS);
+        if (job instanceof DeliverWebhookBatchJob) {
+            DeliverWebhookBatchJob batchJob = (DeliverWebhookBatchJob) job;
+            return webhookLogRepository.claimBatchRetry(batchJob.getBatchId(), batchJob.getAttempt() - 1,
+                dueBy, leaseUntil) > 0;
+        }
+        DeliverWebhookJob webhookJob = (DeliverWebhookJob) job;
+        if (webhookJob.getWebhookLogId() == null) {
+            return true;
+        }
+        return webhookLogRepository.claimRetry(webhookJob.getWebhookLogId(), webhookJob.getAttempt() - 1,
+            dueBy, leaseUntil) > 0;
+    }
+
+    // Hands a claimed retry back so it can be claimed again once delayMillis
+    // have passed, by the re-queued job or, failing that, the sweeper
+    public void release(Job job, long delayMillis) {
+        LocalDateTime retryAt = LocalDateTime.now().plus(delayMillis, ChronoUnit.MILLIS);
+        if (job instanceof DeliverWebhookBatchJob) {
+            DeliverWebhookBatchJob batchJob = (DeliverWebhookBatchJob) job;
+            webhookLogRepository.releaseBatchRetry(batchJob.getBatchId(), batchJob.getAttempt() - 1, retryAt);
+        } else if (((DeliverWebhookJob) job).getWebhookLogId() != null) {
+            DeliverWebhookJob webhookJob = (DeliverWebhookJob) job;
+            webhookLogRepository.releaseRetry(webhookJob.getWebhookLogId(), webhookJob.getAttempt() - 1, retryAt);
+        }
+    }
+
+    public long getLease() {
+        return lease;
+    }
+}
@@ -0,0 +1,75 @@
+package com.gateway.services;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// HMAC-SHA256 webhook signatures. Initialized Mac instances are cached per
+// thread and per merchant secret, so signing a delivery reuses a keyed Mac
+// instead of looking up the provider and expanding the key each time. The
+// digest goes into a per-thread buffer and is hex-encoded through a lookup
+// table; the returned String is the only allocation on the hot path.
+public final class WebhookSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    // Secrets kept per thread; the least recently used Mac is dropped beyond this
+    private static final int MAX_CACHED_SECRETS = 256;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private static final class State {
+        final Map<String, Mac> macs = new LinkedHashMap<String, Mac>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+                return size() > MAX_CACHED_SECRETS;
+            }
+        };
+        byte[] digest = new byte[0];
+        final char[] hex = new char[128];
+    }
+
+    private WebhookSigner() {}
+
+    // Lowercase hex HMAC-SHA256 of the payload bytes; empty if signing fails
+    // or the merchant has no webhook secret
+    public static String sign(byte[] payload, String secret) {
+        if (secret == null || secret.isEmpty()) {
+            System.err.println("Error generating HMAC signature: no webhook secret configured");
+            return "";
+        }
+        try {
+            State state = STATE.get();
+            Mac mac = state.macs.get(secret);
+            if (mac == null) {
+                mac = Mac.getInstance(ALGORITHM);
+                mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+                state.macs.put(secret, mac);
+            }
+
+            int length = mac.getMacLength();
+            if (state.digest.length < length) {
+                state.digest = new byte[length];
+            }
+            mac.update(payload);
+            // doFinal also resets the Mac for the next signature
+            mac.doFinal(state.digest, 0);
+
+            char[] hex = state.hex;
+            for (int i = 0; i < length; i++) {
+                int b = state.digest[i] & 0xFF;
+                hex[i * 2] = HEX[b >>> 4];
+                hex[i * 2 + 1] = HEX[b & 0x0F];
+            }
+            return new String(hex, 0, length * 2);
+        } catch (GeneralSecurityException | IllegalStateException e) {
+            System.err.println("Error generating HMAC signature: " + e.getMessage());
+            return "";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.gateway.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+// Deficit round robin over a set of keyed sub-queues. Each time the cursor
+// reaches a key it is credited quantum * weight; the key is then served until
+// that credit is spent, so over a round every backlogged key gets a share
+// proportional to its weight no matter how deep the others are. Keys whose
+// sub-queue turns out to be empty drop out and lose their remaining credit.
+public class DeficitRoundRobin {
+
+    private final int quantum;
+
+    private final ToIntFunction<String> weights;
+
+    private final List<String> active = new ArrayList<>();
+
+    private final Map<String, Integer> deficits = new HashMap<>();
+
+    private int cursor;
+
+    public DeficitRoundRobin(int quantum, ToIntFunction<String> weights) {
+        this.quantum = Math.max(1, quantum);
+        this.weights = weights;
+    }
+
+    // A claim on up to count entries from key's sub-queue
+    public static class Grant {
+        private final String key;
+        private final int count;
+
+        Grant(String key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    // Replaces the active keys with the given ones, keeping the rotation order
+    // and credit of keys that stay active
+    public synchronized void refresh(Collection<String> keys) {
+        for (String key : new ArrayList<>(active)) {
+            if (!keys.contains(key)) {
+                remove(key);
+            }
+        }
+        boolean wasEmpty = active.isEmpty();
+        for (String key : keys) {
+            if (!deficits.containsKey(key)) {
+                active.add(key);
+                deficits.put(key, 0);
+            }
+        }
+        if (wasEmpty && !active.isEmpty()) {
+            cursor = 0;
+            credit();
+        }
+    }
+
+    // Returns the next key to serve and how many entries it may take, or null
+    // when no key is active. The count is reserved until complete is called.
+    public synchronized Grant next(int max) {
+        for (int visited = 0; visited <= active.size(); visited++) {
+            if (active.isEmpty()) {
+                return null;
+            }
+            String key = active.get(cursor);
+            int deficit = deficits.get(key);
+            if (deficit >= 1) {
+                int count = Math.min(max, deficit);
+                deficits.put(key, deficit - count);
+                return new Grant(key, count);
+            }
+            cursor = (cursor + 1) % active.size();
+            credit();
+        }
+        return null;
+    }
+
+    // Settles a grant. A key that could not fill its grant has run dry and
+    // leaves the rotation until the next refresh sees it active again.
+    public synchronized void complete(Grant grant, int taken) {
+        if (!deficits.containsKey(grant.key)) {
+            return;
+        }
+        if (taken < grant.count) {
+            remove(grant.key);
+        }
+    }
+
+    public synchronized int size() {
+        return active.size();
+    }
+
+    private void remove(String key) {
+        int index = active.indexOf(key);
+        if (index < 0) {
+            return;
+        }
+        active.remove(index);
+        deficits.remove(key);
+        if (active.isEmpty()) {
+            cursor = 0;
+            return;
+        }
+        if (index < cursor) {
+            cursor--;
+        } else if (index == cursor) {
+            // The next key slides into the cursor position and starts its turn
+            cursor = cursor % active.size();
+            credit();
+        }
+    }
+
+    private void credit() {
+        String key = active.get(cursor);
+        deficits.merge(key, quantum * Math.max(1, weights.applyAsInt(key)), Integer::sum);
+    }
+}
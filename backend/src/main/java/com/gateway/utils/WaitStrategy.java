@@ -0,0 +1,110 @@
+package com.gateway.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// How a thread waits for a ring buffer to become non-empty (consumers) or
+// non-full (producers). await is called in a retry loop; attempt counts the
+// retries since the last successful offer/poll.
+public interface WaitStrategy {
+
+    void await(int attempt, long deadlineNanos) throws InterruptedException;
+
+    // Called after every successful offer/poll
+    void signalAll();
+
+    static WaitStrategy forName(String name) {
+        switch (name == null ? "" : name.toLowerCase()) {
+            case "busy-spin":
+                return new BusySpin();
+            case "sleeping":
+                return new Sleeping();
+            case "blocking":
+            default:
+                return new Blocking();
+        }
+    }
+
+    // Lowest latency, burns a core per waiting thread
+    class BusySpin implements WaitStrategy {
+        @Override
+        public void await(int attempt, long deadlineNanos) throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.onSpinWait();
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    // Spins, then yields, then parks briefly - a balance of latency and CPU
+    class Sleeping implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+        private static final int YIELD_TRIES = 200;
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        @Override
+        public void await(int attempt, long deadlineNanos) throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (attempt < YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(PARK_NANOS, Math.max(1, deadlineNanos - System.nanoTime())));
+            }
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    // Parks on a condition; cheapest on CPU for mostly idle queues. Signalling
+    // only takes the lock when someone is waiting, and waits are capped so a
+    // wakeup lost to that check costs at most MAX_WAIT.
+    class Blocking implements WaitStrategy {
+        private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        @Override
+        public void await(int attempt, long deadlineNanos) throws InterruptedException {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            lock.lockInterruptibly();
+            waiters.incrementAndGet();
+            try {
+                changed.awaitNanos(Math.min(remaining, MAX_WAIT_NANOS));
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiters.get() == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
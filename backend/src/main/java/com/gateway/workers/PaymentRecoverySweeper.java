@@ -0,0 +1,111 @@
+package com.gateway.workers;
+
+import com.gateway.jobs.ProcessPaymentJob;
+import com.gateway.services.JobQueueService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Re-drives payments stuck in processing. A payment job is acknowledged once
+// its handler returns, which with ASYNC_PROCESSING is before the completion
+// on the ProcessingTimer has run, and the list backends drop a job as soon as
+// it is dequeued; a worker dying in between leaves the payment in processing
+// with nothing queued for it. Payments whose claim is older than
+// PAYMENT_CLAIM_TIMEOUT plus PAYMENT_RECOVERY_SWEEP_GRACE are taken in
+// bounded batches with FOR UPDATE SKIP LOCKED and put back on the payment
+// queue, where the stale claim can be taken over. Their updated_at is moved
+// to exactly the claim timeout ago: they stay claimable, but are only swept
+// again if still stuck after another grace period.
+@Component
+@Profile("worker")
+public class PaymentRecoverySweeper {
+
+    private static final String QUEUE = "payment_queue";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Value("${PAYMENT_RECOVERY_SWEEP_ENABLED:true}")
+    private boolean sweepEnabled;
+
+    // Payments re-queued per sweep transaction
+    @Value("${PAYMENT_RECOVERY_SWEEP_BATCH_SIZE:200}")
+    private int batchSize;
+
+    // How long past its claim timeout a payment must be before it is re-queued
+    @Value("${PAYMENT_RECOVERY_SWEEP_GRACE:60000}")
+    private long grace;
+
+    @Value("${PAYMENT_CLAIM_TIMEOUT:60000}")
+    private long claimTimeout;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${PAYMENT_RECOVERY_SWEEP_INTERVAL:10000}")
+    public void sweep() {
+        if (!sweepEnabled) {
+            return;
+        }
+        try {
+            // Keep going while batches come back full so a backlog drains at once
+            List<ProcessPaymentJob> requeued;
+            do {
+                requeued = requeueBatch();
+            } while (requeued.size() >= batchSize);
+        } catch (Exception e) {
+            System.err.println("Error sweeping stuck payments: " + e.getMessage());
+        }
+    }
+
+    private List<ProcessPaymentJob> requeueBatch() {
+        List<ProcessPaymentJob> requeued = transactionTemplate.execute(status -> {
+            List<ProcessPaymentJob> jobs = jdbcTemplate.query(
+                "SELECT id, merchant_id FROM payments WHERE status = 'processing' " +
+                "AND updated_at < CURRENT_TIMESTAMP - make_interval(secs => ?) ORDER BY updated_at LIMIT ? " +
+                "FOR UPDATE SKIP LOCKED",
+                (rs, rowNum) -> new ProcessPaymentJob(rs.getString("id"), rs.getObject("merchant_id", UUID.class)),
+                (claimTimeout + grace) / 1000.0, batchSize);
+            if (jobs.isEmpty()) {
+                return jobs;
+            }
+            List<String> ids = new ArrayList<>(jobs.size());
+            for (ProcessPaymentJob job : jobs) {
+                ids.add(job.getPaymentId());
+            }
+            jdbcTemplate.update("UPDATE payments SET updated_at = CURRENT_TIMESTAMP - make_interval(secs => ?) " +
+                    "WHERE id = ANY(?) AND status = 'processing'",
+                ps -> {
+                    ps.setDouble(1, claimTimeout / 1000.0);
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", ids.toArray()));
+                });
+            return jobs;
+        });
+        if (requeued == null || requeued.isEmpty()) {
+            return new ArrayList<>();
+        }
+        System.out.println("Re-queued " + requeued.size() + " payments stuck in processing");
+        jobQueueService.enqueueJobs(QUEUE, requeued);
+        return requeued;
+    }
+}
@@ -1,21 +1,27 @@
 package com.gateway.workers;
 
+import com.gateway.jobs.Job;
+import com.gateway.jobs.ProcessPaymentBatchJob;
 import com.gateway.jobs.ProcessPaymentJob;
 import com.gateway.repositories.PaymentRepository;
-import com.gateway.services.JobQueueService;
+import com.gateway.services.ProcessingTimer;
 import com.gateway.services.ValidationService;
+import com.gateway.services.WebhookLanes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 @Profile("worker")
 public class PaymentWorker {
 
     @Autowired
-    private JobQueueService jobQueueService;
+    private WebhookLanes webhookLanes;
     
     @Autowired
     private PaymentRepository paymentRepository;
@@ -43,24 +49,51 @@ public class PaymentWorker {
     
     @Value("${CARD_SUCCESS_RATE:0.95}")
     private double cardSuccessRate;
+    
+    @Value("${ASYNC_PROCESSING:false}")
+    private boolean asyncProcessing;
+    
+    // A payment left in processing this long (its worker died) may be re-claimed
+    @Value("${PAYMENT_CLAIM_TIMEOUT:60000}")
+    private long claimTimeout;
+    
+    @Autowired
+    private ProcessingTimer processingTimer;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
-    // Process payment jobs periodically
-    @Scheduled(fixedDelay = 1000) // Check every second
-    public void processPaymentJobs() {
-        try {
-            ProcessPaymentJob job = (ProcessPaymentJob) jobQueueService.dequeueJob("payment_queue");
-            if (job != null) {
-                // Set dependencies before execution
-                job.setDependencies(paymentRepository, validationService, testMode, testPaymentSuccess, 
-                    processingDelayMin, processingDelayMax, testProcessingDelay, upiSuccessRate, cardSuccessRate, jobQueueService);
-                job.execute();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Payment worker interrupted: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("Error processing payment job: " + e.getMessage());
-            e.printStackTrace();
+    // Process a single payment job dequeued by the worker runtime
+    public void processPaymentJob(ProcessPaymentJob job) throws InterruptedException {
+        // Set dependencies before execution
+        job.setDependencies(paymentRepository, validationService, testMode, testPaymentSuccess, 
+            processingDelayMin, processingDelayMax, testProcessingDelay, upiSuccessRate, cardSuccessRate, webhookLanes, claimTimeout);
+        if (asyncProcessing) {
+            job.executeAsync(processingTimer);
+        } else {
+            job.execute();
+        }
+    }
+    
+    // Process a batch of payment jobs drained from the queue in one go
+    public void processPaymentBatch(List<Job> jobs) throws InterruptedException {
+        if (jobs.size() == 1) {
+            processPaymentJob((ProcessPaymentJob) jobs.get(0));
+            return;
+        }
+        
+        List<String> paymentIds = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            paymentIds.add(((ProcessPaymentJob) job).getPaymentId());
+        }
+        
+        ProcessPaymentBatchJob batchJob = new ProcessPaymentBatchJob(paymentIds);
+        batchJob.setDependencies(paymentRepository, jdbcTemplate, testMode, testPaymentSuccess, 
+            processingDelayMin, processingDelayMax, testProcessingDelay, upiSuccessRate, cardSuccessRate, webhookLanes, claimTimeout);
+        if (asyncProcessing) {
+            batchJob.executeAsync(processingTimer);
+        } else {
+            batchJob.execute();
         }
     }
 }
\ No newline at end of file
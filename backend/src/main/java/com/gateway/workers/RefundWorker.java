@@ -2,10 +2,11 @@ package com.gateway.workers;
 
 import com.gateway.jobs.ProcessRefundJob;
 import com.gateway.services.JobQueueService;
+import com.gateway.services.ProcessingTimer;
+import com.gateway.services.WebhookLanes;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -23,22 +24,23 @@ public class RefundWorker {
     
     @Value("${TEST_MODE:false}")
     private boolean testMode;
+    
+    @Value("${ASYNC_PROCESSING:false}")
+    private boolean asyncProcessing;
+    
+    @Autowired
+    private ProcessingTimer processingTimer;
+    
+    @Autowired
+    private WebhookLanes webhookLanes;
 
-    // Process refund jobs periodically
-    @Scheduled(fixedDelay = 1000) // Check every second
-    public void processRefundJobs() {
-        try {
-            ProcessRefundJob job = (ProcessRefundJob) jobQueueService.dequeueJob("refund_queue");
-            if (job != null) {
-                job.setDependencies(refundRepository, paymentRepository, testMode);
-                job.execute();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Refund worker interrupted: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("Error processing refund job: " + e.getMessage());
-            e.printStackTrace();
+    // Process a single refund job dequeued by the worker runtime
+    public void processRefundJob(ProcessRefundJob job) throws InterruptedException {
+        job.setDependencies(refundRepository, paymentRepository, testMode, webhookLanes);
+        if (asyncProcessing) {
+            job.executeAsync(processingTimer);
+        } else {
+            job.execute();
         }
     }
 }
\ No newline at end of file
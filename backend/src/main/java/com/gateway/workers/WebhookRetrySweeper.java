@@ -0,0 +1,162 @@
+package com.gateway.workers;
+
+import com.gateway.jobs.DeliverWebhookBatchJob;
+import com.gateway.jobs.DeliverWebhookJob;
+import com.gateway.jobs.Job;
+import com.gateway.services.JobQueueService;
+import com.gateway.services.WebhookLanes;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Recovers webhook retries whose timer never fired: the delayed job was lost
+// with Redis, or the worker delivering it died. Rows still pending
+// WEBHOOK_RETRY_SWEEP_GRACE ms past their retry time are taken in bounded
+// batches with FOR UPDATE SKIP LOCKED, marked due now and put back on the
+// webhook queue, where consumers claim and deliver them like any other
+// retry. Nothing is delivered on the scheduler thread, so a slow endpoint
+// cannot hold up the other scheduled tasks. Every worker runs the sweep;
+// SKIP LOCKED splits the backlog between them, and a row queued twice is
+// still delivered once because only one copy can claim it.
+@Component
+@Profile("worker")
+public class WebhookRetrySweeper {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Value("${WEBHOOK_RETRY_SWEEP_ENABLED:true}")
+    private boolean sweepEnabled;
+
+    // Rows claimed per sweep transaction
+    @Value("${WEBHOOK_RETRY_SWEEP_BATCH_SIZE:200}")
+    private int batchSize;
+
+    // How overdue a retry must be before the sweeper takes it from its timer
+    @Value("${WEBHOOK_RETRY_SWEEP_GRACE:60000}")
+    private long grace;
+
+    private TransactionTemplate transactionTemplate;
+
+    private static class DueRow {
+        final UUID id;
+        final UUID merchantId;
+        final String event;
+        final byte[] payload;
+        final int attempts;
+        final UUID batchId;
+        final UUID endpointId;
+
+        DueRow(UUID id, UUID merchantId, String event, byte[] payload, int attempts, UUID batchId,
+               UUID endpointId) {
+            this.id = id;
+            this.merchantId = merchantId;
+            this.event = event;
+            this.payload = payload;
+            this.attempts = attempts;
+            this.batchId = batchId;
+            this.endpointId = endpointId;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${WEBHOOK_RETRY_SWEEP_INTERVAL:5000}")
+    public void sweep() {
+        if (!sweepEnabled) {
+            return;
+        }
+        try {
+            // Keep going while batches come back full so a backlog drains at once
+            List<Job> requeued;
+            do {
+                requeued = requeueBatch();
+            } while (requeued.size() >= batchSize);
+        } catch (Exception e) {
+            System.err.println("Error sweeping webhook retries: " + e.getMessage());
+        }
+    }
+
+    // Marks a batch of overdue rows due now and queues their retries. The
+    // rows are only picked up again once they are overdue a second time, so
+    // a job lost between the commit and the enqueue is swept again later.
+    private List<Job> requeueBatch() {
+        List<Job> requeued = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp overdue = Timestamp.valueOf(now.minus(grace, ChronoUnit.MILLIS));
+            Timestamp dueNow = Timestamp.valueOf(now);
+
+            List<DueRow> rows = jdbcTemplate.query(
+                "SELECT id, merchant_id, event, convert_to(payload::text, 'UTF8') AS payload, attempts, batch_id, " +
+                "endpoint_id FROM webhook_logs " +
+                "WHERE status = 'pending' AND next_retry_at < ? ORDER BY next_retry_at LIMIT ? " +
+                "FOR UPDATE SKIP LOCKED",
+                (rs, rowNum) -> new DueRow(rs.getObject("id", UUID.class), rs.getObject("merchant_id", UUID.class),
+                    rs.getString("event"), rs.getBytes("payload"), rs.getInt("attempts"),
+                    rs.getObject("batch_id", UUID.class), rs.getObject("endpoint_id", UUID.class)),
+                overdue, batchSize);
+
+            List<Job> jobs = new ArrayList<>(rows.size());
+            List<UUID> ids = new ArrayList<>(rows.size());
+            Set<UUID> batches = new HashSet<>();
+            for (DueRow row : rows) {
+                if (row.batchId == null) {
+                    ids.add(row.id);
+                    jobs.add(new DeliverWebhookJob(row.merchantId, row.event, row.payload, row.id, row.attempts + 1,
+                        row.endpointId));
+                } else if (batches.add(row.batchId)) {
+                    // The batch's other rows may be locked by another sweep; the
+                    // update waits for it and then matches nothing if it won
+                    int marked = jdbcTemplate.update(
+                        "UPDATE webhook_logs SET next_retry_at = ? WHERE batch_id = ? AND status = 'pending' " +
+                        "AND attempts = ? AND next_retry_at < ?",
+                        dueNow, row.batchId, row.attempts, overdue);
+                    if (marked > 0) {
+                        jobs.add(new DeliverWebhookBatchJob(row.merchantId, row.batchId, row.attempts + 1,
+                            row.endpointId));
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                jdbcTemplate.update("UPDATE webhook_logs SET next_retry_at = ? WHERE id = ANY(?)",
+                    ps -> {
+                        ps.setTimestamp(1, dueNow);
+                        ps.setArray(2, ps.getConnection().createArrayOf("uuid", ids.toArray()));
+                    });
+            }
+            return jobs;
+        });
+        if (requeued == null || requeued.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Retries go on the shared queue, never on an ordered lane: a lane
+        // retries its own events in place, so a lane event only gets here
+        // once the worker holding it has gone
+        jobQueueService.enqueueJobs(WebhookLanes.WEBHOOK_QUEUE, requeued);
+        return requeued;
+    }
+}
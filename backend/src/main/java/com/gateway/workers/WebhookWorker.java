@@ -1,11 +1,20 @@
 package com.gateway.workers;
 
+import com.gateway.jobs.DeliverWebhookBatchJob;
 import com.gateway.jobs.DeliverWebhookJob;
+import com.gateway.jobs.Job;
+import com.gateway.models.WebhookEndpoint;
 import com.gateway.services.JobQueueService;
+import com.gateway.services.WebhookBatcher;
+import com.gateway.services.WebhookCircuitBreaker;
+import com.gateway.services.WebhookDispatcher;
+import com.gateway.services.WebhookEndpointIndex;
+import com.gateway.services.WebhookHttpClient;
+import com.gateway.services.WebhookLogWriter;
+import com.gateway.services.WebhookRetryScheduler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -19,26 +28,96 @@ public class WebhookWorker {
     private com.gateway.repositories.WebhookLogRepository webhookLogRepository;
     
     @Autowired
-    private com.gateway.repositories.MerchantRepository merchantRepository;
+    private WebhookEndpointIndex webhookEndpointIndex;
     
-    @Value("${WEBHOOK_RETRY_INTERVALS_TEST:false}")
-    private boolean webhookRetryIntervalsTest;
+    @Autowired
+    private WebhookLogWriter webhookLogWriter;
+    
+    @Autowired
+    private WebhookRetryScheduler webhookRetryScheduler;
+    
+    @Autowired
+    private WebhookHttpClient webhookHttpClient;
+    
+    @Autowired
+    private WebhookDispatcher webhookDispatcher;
+    
+    @Autowired
+    private WebhookCircuitBreaker webhookCircuitBreaker;
+    
+    @Autowired
+    private WebhookBatcher webhookBatcher;
+    
+    // Hand requests to the non-blocking dispatcher instead of waiting on each response
+    @Value("${WEBHOOK_ASYNC_DELIVERY:true}")
+    private boolean asyncDelivery;
 
-    // Process webhook jobs periodically
-    @Scheduled(fixedDelay = 1000) // Check every second
-    public void processWebhookJobs() {
-        try {
-            DeliverWebhookJob job = (DeliverWebhookJob) jobQueueService.dequeueJob("webhook_queue");
-            if (job != null) {
-                job.setDependencies(webhookLogRepository, merchantRepository, webhookRetryIntervalsTest);
-                job.execute();
+    // Process a single webhook job dequeued by the worker runtime
+    public void processWebhookJob(Job job) throws InterruptedException {
+        // A retry is delivered only by whoever claims its log row
+        if (!webhookRetryScheduler.claim(job)) {
+            return;
+        }
+        deliver(job);
+    }
+    
+    // Process a job from an ordered lane. Lane jobs are sent one at a time
+    // and waited on, retries included, so the next event for the key cannot
+    // overtake this one; batching and the async dispatcher would both
+    // reorder them.
+    public void processLaneJob(Job job) throws InterruptedException {
+        if (!webhookRetryScheduler.claim(job)) {
+            return;
+        }
+        deliver(job, false, true);
+    }
+    
+    // Delivers a job whose retry, if it is one, has already been claimed
+    public void deliver(Job job) throws InterruptedException {
+        deliver(job, asyncDelivery, false);
+    }
+    
+    private void deliver(Job job, boolean async, boolean ordered) throws InterruptedException {
+        if (job instanceof DeliverWebhookBatchJob) {
+            DeliverWebhookBatchJob batchJob = (DeliverWebhookBatchJob) job;
+            batchJob.setDependencies(webhookLogRepository, webhookLogWriter, webhookEndpointIndex,
+                webhookRetryScheduler, webhookHttpClient, webhookCircuitBreaker);
+            if (async) {
+                batchJob.executeAsync(webhookDispatcher);
+            } else {
+                batchJob.execute();
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Webhook worker interrupted: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("Error processing webhook job: " + e.getMessage());
-            e.printStackTrace();
+            return;
+        }
+        
+        DeliverWebhookJob webhookJob = (DeliverWebhookJob) job;
+        // A new event for a merchant with endpoints becomes one delivery per
+        // endpoint subscribed to it, each with its own log row and retries
+        if (webhookJob.getWebhookLogId() == null && webhookJob.getEndpointId() == null
+                && webhookEndpointIndex.hasEndpoints(webhookJob.getMerchantId())) {
+            for (WebhookEndpoint endpoint
+                    : webhookEndpointIndex.endpointsFor(webhookJob.getMerchantId(), webhookJob.getEventType())) {
+                deliverOne(webhookJob.forEndpoint(endpoint.getId()), async, ordered);
+            }
+            return;
+        }
+        deliverOne(webhookJob, async, ordered);
+    }
+    
+    private void deliverOne(DeliverWebhookJob webhookJob, boolean async, boolean ordered)
+            throws InterruptedException {
+        // Merchants on batched delivery get the event in their next batch
+        if (!ordered && webhookBatcher.offer(webhookJob)) {
+            return;
+        }
+        webhookJob.setDependencies(webhookLogWriter, webhookEndpointIndex, webhookRetryScheduler, webhookHttpClient,
+                webhookCircuitBreaker);
+        if (ordered) {
+            webhookJob.executeInOrder();
+        } else if (async) {
+            webhookJob.executeAsync(webhookDispatcher);
+        } else {
+            webhookJob.execute();
         }
     }
 }
\ No newline at end of file
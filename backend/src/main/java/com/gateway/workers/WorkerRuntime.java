@@ -0,0 +1,298 @@
+package com.gateway.workers;
+
+import com.gateway.jobs.Job;
+import com.gateway.jobs.ProcessPaymentJob;
+import com.gateway.jobs.ProcessRefundJob;
+import com.gateway.services.JobMetricsService;
+import com.gateway.services.JobQueueService;
+import com.gateway.services.WebhookLanes;
+import jakarta.annotation.PreDestroy;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@Profile("worker")
+public class WorkerRuntime {
+
+    @Autowired
+    private JobQueueService jobQueueService;
+
+    @Autowired
+    private JobMetricsService jobMetricsService;
+
+    @Autowired
+    private PaymentWorker paymentWorker;
+
+    @Autowired
+    private RefundWorker refundWorker;
+
+    @Autowired
+    private WebhookWorker webhookWorker;
+
+    @Autowired
+    private WebhookLanes webhookLanes;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${PAYMENT_WORKER_THREADS:32}")
+    private int paymentWorkerThreads;
+
+    @Value("${REFUND_WORKER_THREADS:8}")
+    private int refundWorkerThreads;
+
+    @Value("${WEBHOOK_WORKER_THREADS:64}")
+    private int webhookWorkerThreads;
+
+    @Value("${PAYMENT_WORKER_PRIORITY:8}")
+    private int paymentWorkerPriority;
+
+    @Value("${REFUND_WORKER_PRIORITY:5}")
+    private int refundWorkerPriority;
+
+    @Value("${WEBHOOK_WORKER_PRIORITY:5}")
+    private int webhookWorkerPriority;
+
+    // Payment jobs drained per dequeue; 1 keeps the per-job path
+    @Value("${PAYMENT_BATCH_SIZE:1}")
+    private int paymentBatchSize;
+
+    // How long an idle consumer blocks on the queue before re-checking for shutdown
+    @Value("${WORKER_POLL_TIMEOUT:1000}")
+    private long pollTimeout;
+
+    // How long shutdown waits for in-flight jobs to finish
+    @Value("${WORKER_SHUTDOWN_TIMEOUT:30000}")
+    private long shutdownTimeout;
+
+    private final List<ExecutorService> pools = new ArrayList<>();
+
+    private volatile boolean running = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        if (paymentBatchSize > 1) {
+            startBatchConsumers("payment_queue", paymentWorkerThreads, paymentWorkerPriority, paymentBatchSize,
+                paymentWorker::processPaymentBatch);
+        } else {
+            startConsumers("payment_queue", paymentWorkerThreads, paymentWorkerPriority,
+                job -> paymentWorker.processPaymentJob((ProcessPaymentJob) job));
+        }
+        startConsumers("refund_queue", refundWorkerThreads, refundWorkerPriority,
+            job -> refundWorker.processRefundJob((ProcessRefundJob) job));
+        startConsumers("webhook_queue", webhookWorkerThreads, webhookWorkerPriority,
+            webhookWorker::processWebhookJob);
+        if (webhookLanes.getLaneCount() > 0) {
+            startLaneConsumers();
+        }
+    }
+
+    // One thread per lane on every worker; a thread only consumes while it
+    // holds its lane's lock, so each lane has one consumer cluster-wide and
+    // another worker takes over when the holder goes away
+    private void startLaneConsumers() {
+        int lanes = webhookLanes.getLaneCount();
+        ExecutorService pool = Executors.newFixedThreadPool(lanes,
+            new QueueThreadFactory("webhook_queue:lane", webhookWorkerPriority));
+        for (int lane = 0; lane < lanes; lane++) {
+            String queueName = webhookLanes.laneQueue(lane);
+            RLock lock = redissonClient.getLock(queueName + ":owner");
+            pool.execute(() -> consumeLane(queueName, lock));
+        }
+        pools.add(pool);
+        System.out.println("Started consumers for " + lanes + " webhook lanes");
+    }
+
+    private void consumeLane(String queueName, RLock lock) {
+        while (running) {
+            try {
+                // No lease time, so the lock watchdog keeps it while this thread lives
+                if (!lock.tryLock(pollTimeout, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Error acquiring " + queueName + ": " + e.getMessage());
+                backOff();
+                continue;
+            }
+
+            webhookLanes.laneAcquired();
+            try {
+                while (running && !Thread.currentThread().isInterrupted()) {
+                    consumeOnce(queueName, 1, jobs -> webhookWorker.processLaneJob(jobs.get(0)));
+                }
+            } finally {
+                webhookLanes.laneReleased();
+                try {
+                    lock.unlock();
+                } catch (Exception e) {
+                    System.err.println("Error releasing " + queueName + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void startConsumers(String queueName, int threads, int priority, JobHandler handler) {
+        startBatchConsumers(queueName, threads, priority, 1, jobs -> handler.handle(jobs.get(0)));
+    }
+
+    private void startBatchConsumers(String queueName, int threads, int priority, int batchSize, BatchHandler handler) {
+        int poolSize = Math.max(1, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, new QueueThreadFactory(queueName, priority));
+        for (int i = 0; i < poolSize; i++) {
+            pool.execute(() -> consume(queueName, batchSize, handler));
+        }
+        pools.add(pool);
+        System.out.println("Started " + poolSize + " consumers on " + queueName
+            + " (priority " + priority + ", batch size " + batchSize + ")");
+    }
+
+    // Continuously consume jobs until shutdown; the current batch always runs to completion
+    private void consume(String queueName, int batchSize, BatchHandler handler) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            consumeOnce(queueName, batchSize, handler);
+        }
+    }
+
+    // Takes and handles one batch; returns with the interrupt flag set when interrupted
+    private void consumeOnce(String queueName, int batchSize, BatchHandler handler) {
+        List<Job> jobs;
+        try {
+            jobs = batchSize > 1
+                ? jobQueueService.dequeueBatch(queueName, batchSize, pollTimeout, TimeUnit.MILLISECONDS)
+                : singleton(jobQueueService.dequeueJob(queueName, pollTimeout, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Consumer on " + queueName + " interrupted: " + e.getMessage());
+            return;
+        } catch (Exception e) {
+            System.err.println("Error dequeuing from " + queueName + ": " + e.getMessage());
+            backOff();
+            return;
+        }
+
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        jobMetricsService.jobsStarted(queueName, jobs.size());
+        long startedAt = System.nanoTime();
+        try {
+            handler.handle(jobs);
+            jobMetricsService.jobsCompleted(queueName, jobs, System.nanoTime() - startedAt);
+        } catch (InterruptedException e) {
+            // Leave the jobs unacknowledged so a backend with delivery
+            // tracking hands them to another consumer
+            jobMetricsService.jobsAbandoned(queueName, jobs.size());
+            Thread.currentThread().interrupt();
+            System.err.println("Consumer on " + queueName + " interrupted: " + e.getMessage());
+            return;
+        } catch (Exception e) {
+            jobMetricsService.jobsFailed(queueName, jobs, System.nanoTime() - startedAt);
+            System.err.println("Error processing job from " + queueName + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+        acknowledge(queueName, jobs);
+    }
+
+    private void acknowledge(String queueName, List<Job> jobs) {
+        for (Job job : jobs) {
+            try {
+                jobQueueService.acknowledgeJob(queueName, job);
+            } catch (Exception e) {
+                System.err.println("Error acknowledging job on " + queueName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static List<Job> singleton(Job job) {
+        return job == null ? Collections.emptyList() : Collections.singletonList(job);
+    }
+
+    private void backOff() {
+        try {
+            Thread.sleep(pollTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        // Stop taking new jobs; consumers exit after their current job or poll timeout
+        running = false;
+        for (ExecutorService pool : pools) {
+            pool.shutdown();
+        }
+
+        long deadline = System.currentTimeMillis() + shutdownTimeout;
+        for (ExecutorService pool : pools) {
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!pool.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                    System.err.println("Worker pool did not drain within " + shutdownTimeout + "ms, forcing shutdown");
+                    pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        pools.clear();
+    }
+
+    @FunctionalInterface
+    private interface JobHandler {
+        void handle(Job job) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    private interface BatchHandler {
+        void handle(List<Job> jobs) throws InterruptedException;
+    }
+
+    private static class QueueThreadFactory implements ThreadFactory {
+        private final String queueName;
+        private final int priority;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        QueueThreadFactory(String queueName, int priority) {
+            this.queueName = queueName;
+            this.priority = Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority));
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, queueName + "-worker-" + counter.incrementAndGet());
+            thread.setPriority(priority);
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
@@ -47,6 +47,9 @@ CREATE TABLE IF NOT EXISTS payments (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Worker holding a processing payment; its outcome is written only under this token
+ALTER TABLE payments ADD COLUMN IF NOT EXISTS claim_token VARCHAR(36);
+
 -- Refunds Table
 CREATE TABLE IF NOT EXISTS refunds (
     id VARCHAR(64) PRIMARY KEY,
@@ -74,6 +77,24 @@ CREATE TABLE IF NOT EXISTS webhook_logs (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Batched webhook deliveries (added for batch mode)
+ALTER TABLE webhook_logs ADD COLUMN IF NOT EXISTS batch_id UUID;
+
+-- Webhook Endpoints Table (several endpoints per merchant, each subscribed to a set of events)
+CREATE TABLE IF NOT EXISTS webhook_endpoints (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    merchant_id UUID NOT NULL REFERENCES merchants(id),
+    url TEXT NOT NULL,
+    secret VARCHAR(64) NOT NULL,
+    event_types TEXT NOT NULL DEFAULT '*',
+    is_active BOOLEAN DEFAULT TRUE,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Endpoint a webhook was delivered to; null for the merchant's own webhook_url
+ALTER TABLE webhook_logs ADD COLUMN IF NOT EXISTS endpoint_id UUID;
+
 -- Idempotency Keys Table
 CREATE TABLE IF NOT EXISTS idempotency_keys (
     key VARCHAR(255) PRIMARY KEY,
@@ -83,6 +104,14 @@ CREATE TABLE IF NOT EXISTS idempotency_keys (
     expires_at TIMESTAMP NOT NULL
 );
 
+-- Job Outbox Table (jobs written with their payment/refund, relayed to the queues)
+CREATE TABLE IF NOT EXISTS job_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    queue_name VARCHAR(64) NOT NULL,
+    payload BYTEA NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 -- Required Indexes
 CREATE INDEX IF NOT EXISTS idx_orders_merchant_id ON orders(merchant_id);
 CREATE INDEX IF NOT EXISTS idx_payments_order_id ON payments(order_id);
@@ -90,7 +119,10 @@ CREATE INDEX IF NOT EXISTS idx_payments_status ON payments(status);
 CREATE INDEX IF NOT EXISTS idx_refunds_payment_id ON refunds(payment_id); -- Added for Deliverable 2
 CREATE INDEX IF NOT EXISTS idx_webhook_logs_merchant_id ON webhook_logs(merchant_id); -- Added for Deliverable 2
 CREATE INDEX IF NOT EXISTS idx_webhook_logs_status ON webhook_logs(status); -- Added for Deliverable 2
+CREATE INDEX IF NOT EXISTS idx_webhook_logs_batch_id ON webhook_logs(batch_id) WHERE batch_id IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_webhook_endpoints_merchant_id ON webhook_endpoints(merchant_id);
 CREATE INDEX IF NOT EXISTS idx_webhook_logs_next_retry_at ON webhook_logs(next_retry_at) WHERE status = 'pending'; -- Added for Deliverable 2
+CREATE INDEX IF NOT EXISTS idx_payments_processing_updated_at ON payments(updated_at) WHERE status = 'processing';
 
 -- Insert test merchant if not exists
 INSERT INTO merchants (id, name, email, api_key, api_secret, webhook_secret, created_at)
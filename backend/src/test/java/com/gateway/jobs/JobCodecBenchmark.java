@@ -0,0 +1,87 @@
+package com.gateway.jobs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.MarshallingCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Encode and decode cost of a queued job with JobCodec against MarshallingCodec,
+// Redisson's default and the codec jobs were queued with before it. Jobs carry
+// every field the envelope has. The encoded size of each job is printed once
+// per trial.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JobCodecBenchmark {
+
+    @Param({"binary", "marshalling"})
+    private String codecName;
+
+    @Param({"payment", "webhook"})
+    private String jobType;
+
+    private Codec codec;
+
+    private Job job;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        codec = "binary".equals(codecName) ? JobCodec.INSTANCE : new MarshallingCodec();
+        UUID merchantId = UUID.fromString("550e8400-e29b-41d4-a716-446655440000");
+        if ("payment".equals(jobType)) {
+            job = new ProcessPaymentJob("pay_H8sK3jD9s2L1pQr", merchantId);
+        } else {
+            byte[] payload = ("{\"event\":\"payment.success\",\"timestamp\":\"1705315870\",\"data\":{\"payment\":"
+                + "{\"id\":\"pay_H8sK3jD9s2L1pQr\",\"order_id\":\"order_NXhj67fGH2jk9mPq\",\"amount\":50000,"
+                + "\"currency\":\"INR\",\"method\":\"upi\",\"status\":\"success\","
+                + "\"created_at\":\"2024-01-15T10:31:00\"}}}").getBytes(StandardCharsets.UTF_8);
+            job = new DeliverWebhookJob(merchantId, "payment.success", payload, UUID.randomUUID(), 2,
+                UUID.randomUUID());
+        }
+        job.setEnqueuedAt(System.currentTimeMillis());
+
+        ByteBuf buf = codec.getValueEncoder().encode(job);
+        try {
+            encoded = new byte[buf.readableBytes()];
+            buf.readBytes(encoded);
+        } finally {
+            buf.release();
+        }
+        System.out.println(codecName + " " + jobType + " job: " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        ByteBuf buf = codec.getValueEncoder().encode(job);
+        try {
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return codec.getValueDecoder().decode(Unpooled.wrappedBuffer(encoded), null);
+    }
+}
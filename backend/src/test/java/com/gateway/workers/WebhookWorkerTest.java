@@ -0,0 +1,93 @@
+package com.gateway.workers;
+
+import com.gateway.jobs.DeliverWebhookJob;
+import com.gateway.models.WebhookEndpoint;
+import com.gateway.services.WebhookCircuitBreaker;
+import com.gateway.services.WebhookEndpointIndex;
+import com.gateway.services.WebhookHttpClient;
+import com.gateway.services.WebhookLogWriter;
+import com.gateway.services.WebhookRetryScheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookWorkerTest {
+
+    private static final String URL = "http://merchant.test/webhook";
+
+    @Mock
+    private WebhookEndpointIndex webhookEndpointIndex;
+
+    @Mock
+    private WebhookLogWriter webhookLogWriter;
+
+    @Mock
+    private WebhookRetryScheduler webhookRetryScheduler;
+
+    @Mock
+    private WebhookHttpClient webhookHttpClient;
+
+    @Mock
+    private WebhookCircuitBreaker webhookCircuitBreaker;
+
+    @InjectMocks
+    private WebhookWorker webhookWorker;
+
+    // Event A fails its first attempt and B is queued behind it on the same
+    // lane; A's retry must reach the merchant before B does
+    @Test
+    void laneRetriesFailedEventBeforeDeliveringTheNext() throws Exception {
+        UUID merchantId = UUID.randomUUID();
+        when(webhookEndpointIndex.target(merchantId, null))
+            .thenReturn(new WebhookEndpoint(merchantId, URL, "whsec_test_abc123"));
+        when(webhookCircuitBreaker.allowRequest(merchantId)).thenReturn(true);
+        when(webhookRetryScheduler.claim(any())).thenReturn(true);
+        when(webhookRetryScheduler.hasAttemptsLeft(anyInt())).thenReturn(true);
+        when(webhookRetryScheduler.nextRetryDelayMillis(anyInt())).thenReturn(0L);
+
+        List<String> received = new ArrayList<>();
+        when(webhookHttpClient.post(eq(URL), any(), anyMap())).thenAnswer(invocation -> {
+            String body = new String(invocation.<byte[]>getArgument(1), StandardCharsets.UTF_8);
+            received.add(body);
+            boolean firstTryOfA = "A".equals(body) && received.size() == 1;
+            return response(firstTryOfA ? 500 : 200);
+        });
+
+        webhookWorker.processLaneJob(new DeliverWebhookJob(merchantId, "payment.success", bytes("A")));
+        webhookWorker.processLaneJob(new DeliverWebhookJob(merchantId, "payment.success", bytes("B")));
+
+        assertEquals(List.of("A", "A", "B"), received);
+        verify(webhookRetryScheduler, never()).scheduleRetry(any(), anyLong());
+    }
+
+    private static WebhookHttpClient.Response response(int statusCode) {
+        WebhookHttpClient.Response response = mock(WebhookHttpClient.Response.class);
+        lenient().when(response.getStatusCode()).thenReturn(statusCode);
+        lenient().when(response.isSuccessful()).thenReturn(statusCode >= 200 && statusCode < 300);
+        return response;
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+}